@@ -0,0 +1,84 @@
+package de.tum.logistics.problems;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import de.tum.logistics.VanSimulation;
+import de.tum.logistics.osm.GeoJsonParser;
+import de.tum.logistics.osm.OsmNode;
+
+// Grid clustering against the all-pairs loop it replaced, on parcels drawn from addresses.json like
+// TruckDeliveryProblem.init does. The radii are those of the van and the bike problem.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class DemandClusteringBenchmark {
+  @Param({"20", "5"})
+  public double radiusMeters;
+
+  @Param({"15000"})
+  public int parcels;
+
+  private Map<OsmNode, Integer> demandMap;
+
+  @Setup
+  public void setup() {
+    List<OsmNode> addresses = GeoJsonParser.parseOsmNodes(new File(VanSimulation.RESOURCE_FOLDER, "addresses.json"));
+    Random random = new Random(1);
+    demandMap = new HashMap<>();
+    for (int i = 0; i < parcels; i++) {
+      OsmNode location = addresses.get(random.nextInt(addresses.size()));
+      demandMap.put(location, demandMap.getOrDefault(location, 0) + 1);
+    }
+  }
+
+  @Benchmark
+  public Map<OsmNode, Integer> grid() {
+    return DemandClustering.cluster(demandMap, radiusMeters);
+  }
+
+  @Benchmark
+  public Map<OsmNode, Integer> allPairs() {
+    return allPairs(demandMap, radiusMeters);
+  }
+
+  // the clustering of TruckDeliveryProblem and MicroHubDeliveryProblem before DemandClustering, kept as the baseline.
+  // It adds the unclustered demand of absorbed points, so its parcel total is larger than the input.
+  static Map<OsmNode, Integer> allPairs(Map<OsmNode, Integer> demandMap, double radiusMeters) {
+    Map<OsmNode, Integer> clusteredDemand = new HashMap<>(demandMap);
+    for (OsmNode location : demandMap.keySet()) {
+      if (!clusteredDemand.containsKey(location) || clusteredDemand.get(location) >= 10) {
+        continue;
+      }
+      for (OsmNode otherLocation : demandMap.keySet()) {
+        if (location == otherLocation) {
+          continue;
+        }
+        if (location.distanceMetersL2(otherLocation) < radiusMeters) {
+          clusteredDemand.put(location, clusteredDemand.get(location) + demandMap.get(otherLocation));
+          clusteredDemand.remove(otherLocation);
+        }
+      }
+    }
+    return clusteredDemand;
+  }
+}
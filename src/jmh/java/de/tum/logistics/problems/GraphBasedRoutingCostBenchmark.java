@@ -0,0 +1,164 @@
+package de.tum.logistics.problems;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.graphhopper.jsprit.core.problem.Location;
+import com.graphhopper.jsprit.core.util.Coordinate;
+import de.tum.logistics.osm.OsmNode;
+import de.tum.logistics.routing.EdgeSnapper;
+import de.tum.logistics.routing.RoadNetwork;
+
+// Cost of calculateDistance once every pair of locations is cached, which is what jsprit asks for millions of times
+// per solve, against the map lookup it replaced. The net is a generated grid without projection, so coordinates are in meters and snapping stays in the
+// lane index; no osm.net.xml.gz or TraCI is needed.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GraphBasedRoutingCostBenchmark {
+  private static final int GRID_SIZE = 40;
+  private static final double BLOCK_LENGTH = 100;
+  private static final int PAIRS = 1 << 16;
+
+  @Param({"200", "1000"})
+  public int locationCount;
+
+  private GraphBasedRoutingCost routingCost;
+  private Location[] from;
+  private Location[] to;
+  private int next;
+
+  // the lookup of calculateDistance before edges were interned, kept as the baseline
+  private record RouteCacheKey(String from, String to) {}
+  private final Map<Location, String> edgeCache = new ConcurrentHashMap<>();
+  private final Map<String, int[]> edgeToVertexMap = new ConcurrentHashMap<>();
+  private final Map<RouteCacheKey, Double> distanceCache = new ConcurrentHashMap<>();
+
+  @Setup
+  public void setup() throws IOException {
+    File netFile = File.createTempFile("grid", ".net.xml");
+    netFile.deleteOnExit();
+    writeGrid(netFile);
+    EdgeSnapper.load(netFile);
+    routingCost = new GraphBasedRoutingCost("passenger", GraphBasedRoutingCost.Backend.CONTRACTION_HIERARCHY, null);
+    RoadNetwork network = RoadNetwork.load(netFile);
+    routingCost.setup(network);
+    for (int edge = 0; edge < network.edgeCount(); edge++) {
+      edgeToVertexMap.put(network.edgeId(edge), new int[]{network.fromJunction(edge), network.toJunction(edge)});
+    }
+
+    Random random = new Random(1);
+    double extent = (GRID_SIZE - 1) * BLOCK_LENGTH;
+    Location[] locations = new Location[locationCount];
+    for (int i = 0; i < locationCount; i++) {
+      locations[i] = Location.Builder.newInstance().setIndex(i)
+          .setCoordinate(Coordinate.newInstance(random.nextDouble() * extent, random.nextDouble() * extent)).build();
+    }
+    from = new Location[PAIRS];
+    to = new Location[PAIRS];
+    for (int i = 0; i < PAIRS; i++) {
+      from[i] = locations[random.nextInt(locationCount)];
+      to[i] = locations[random.nextInt(locationCount)];
+      routingCost.calculateDistance(from[i], to[i]);
+      mapDistance(from[i], to[i]);
+    }
+  }
+
+  // bidirectional single lane streets between all neighbouring junctions, every turn but a U-turn allowed
+  private static void writeGrid(File netFile) throws IOException {
+    try (PrintWriter out = new PrintWriter(netFile, "UTF-8")) {
+      out.println("<net>");
+      out.println("<location netOffset=\"0,0\" projParameter=\"!\"/>");
+      for (int row = 0; row < GRID_SIZE; row++) {
+        for (int column = 0; column < GRID_SIZE; column++) {
+          out.println("<junction id=\"" + junction(row, column) + "\" type=\"priority\" x=\"" + column * BLOCK_LENGTH
+              + "\" y=\"" + row * BLOCK_LENGTH + "\"/>");
+          for (int[] neighbour : neighbours(row, column)) {
+            String edge = junction(row, column) + "_" + junction(neighbour[0], neighbour[1]);
+            out.println("<edge id=\"" + edge + "\" from=\"" + junction(row, column) + "\" to=\""
+                + junction(neighbour[0], neighbour[1]) + "\"><lane id=\"" + edge + "_0\" index=\"0\" speed=\"13.9\" length=\""
+                + BLOCK_LENGTH + "\" shape=\"" + column * BLOCK_LENGTH + "," + row * BLOCK_LENGTH + " "
+                + neighbour[1] * BLOCK_LENGTH + "," + neighbour[0] * BLOCK_LENGTH + "\"/></edge>");
+          }
+        }
+      }
+      for (int row = 0; row < GRID_SIZE; row++) {
+        for (int column = 0; column < GRID_SIZE; column++) {
+          for (int[] previous : neighbours(row, column)) {
+            for (int[] following : neighbours(row, column)) {
+              if (previous[0] != following[0] || previous[1] != following[1]) {
+                out.println("<connection from=\"" + junction(previous[0], previous[1]) + "_" + junction(row, column)
+                    + "\" to=\"" + junction(row, column) + "_" + junction(following[0], following[1])
+                    + "\" fromLane=\"0\" toLane=\"0\"/>");
+              }
+            }
+          }
+        }
+      }
+      out.println("</net>");
+    }
+  }
+
+  private static String junction(int row, int column) {
+    return "J" + row + "x" + column;
+  }
+
+  private static int[][] neighbours(int row, int column) {
+    return Stream.of(
+            new int[]{row - 1, column}, new int[]{row + 1, column}, new int[]{row, column - 1}, new int[]{row, column + 1})
+        .filter(neighbour -> neighbour[0] >= 0 && neighbour[0] < GRID_SIZE && neighbour[1] >= 0 && neighbour[1] < GRID_SIZE)
+        .toArray(int[][]::new);
+  }
+
+  @Benchmark
+  public double cachedDistance() {
+    int pair = next++ & (PAIRS - 1);
+    return routingCost.calculateDistance(from[pair], to[pair]);
+  }
+
+  @Benchmark
+  public double mapLookup() {
+    int pair = next++ & (PAIRS - 1);
+    return mapDistance(from[pair], to[pair]);
+  }
+
+  // every call hashes both locations, both edge names and a new key record, and unboxes the cached distance
+  private double mapDistance(Location from, Location to) {
+    String edgeFrom = edgeCache.computeIfAbsent(from, this::snapEdge);
+    String edgeTo = edgeCache.computeIfAbsent(to, this::snapEdge);
+    int[] fromVertices = edgeToVertexMap.get(edgeFrom);
+    int[] toVertices = edgeToVertexMap.get(edgeTo);
+    if (edgeFrom.equals(edgeTo) || fromVertices == null || toVertices == null) {
+      // coordinates are in meters on the grid
+      return Math.hypot(to.getCoordinate().getX() - from.getCoordinate().getX(),
+          to.getCoordinate().getY() - from.getCoordinate().getY());
+    }
+    return distanceCache.computeIfAbsent(new RouteCacheKey(edgeFrom, edgeTo),
+        routeCacheKey -> routingCost.calculateDistance(from, to));
+  }
+
+  private String snapEdge(Location location) {
+    return OsmNode.snapCache().snap(location.getCoordinate().getX(), location.getCoordinate().getY(), "passenger").edgeId();
+  }
+}
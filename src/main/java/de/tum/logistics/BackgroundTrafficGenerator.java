@@ -0,0 +1,173 @@
+package de.tum.logistics;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import de.tum.logistics.routing.EdgeSnapper;
+import de.tum.logistics.routing.RoadNetwork;
+
+// Writes the background traffic of the simulations as a departure-sorted trips file, so that sumo inserts and routes
+// it natively instead of the step loop adding vehicles over TraCI. The expectedNumber curve is the number of vehicles
+// on the road; departures per second follow from it by Little's law (on-road / mean trip duration) plus its growth,
+// and are drawn from a Poisson distribution. Origins and destinations come from a TripSampler, as for
+// RandomRouteGenerator.
+//
+//   BackgroundTrafficGenerator [--seed n] [--output file] [--begin time] [--end time]
+//
+// Begin and end are times of day like those of SimulationOptions (default 07:00 to 18:00). Departure times are
+// relative to begin, since the simulations' sumo clock starts at zero there. Both are written into a comment in front
+// of the routes element, and the simulations refuse a file generated for another begin or for an earlier end.
+public class BackgroundTrafficGenerator {
+  public static final String DEFAULT_FILE_NAME = "background.rou.xml.gz";
+  static final long PASSENGER_PEAK = 3000;
+  static final long BICYCLE_PEAK = 1000;
+  private static final double PASSENGER_TRIP_SECONDS = 600;
+  private static final double BICYCLE_TRIP_SECONDS = 900;
+  // the vehicles expected on the road at the beginning depart within the first minute
+  private static final int WARM_UP_SECONDS = 60;
+  private static final Pattern TIME_SPAN = Pattern.compile("<!-- begin=\"(\\d+)\" end=\"(\\d+)\" -->");
+
+  private record TrafficClass(String vehicleType, String vehicleClass, long peak, double meanTripSeconds,
+                              TripSampler trips) {}
+
+  public static void main(String[] args) {
+    long seed = 1;
+    File outputFile = new File(VanSimulation.RESOURCE_FOLDER, DEFAULT_FILE_NAME);
+    int begin = VanSimulation.SIMULATION_STEP_BEGINNING;
+    int end = VanSimulation.SIMULATION_STEP_END;
+    for (int i = 0; i < args.length; i++) {
+      switch (args[i]) {
+        case "--seed" -> seed = Long.parseLong(args[++i]);
+        case "--output" -> outputFile = new File(args[++i]);
+        case "--begin" -> begin = SimulationOptions.parseTime(args[++i]);
+        case "--end" -> end = SimulationOptions.parseTime(args[++i]);
+        default -> {
+          System.err.println("Unknown option " + args[i]
+              + ", expected --seed <n>, --output <file>, --begin <time> or --end <time>");
+          System.exit(1);
+        }
+      }
+    }
+    if (end <= begin) {
+      System.err.println("The end must be after the begin");
+      System.exit(1);
+    }
+
+    File netFile = new File(VanSimulation.RESOURCE_FOLDER, "osm.net.xml.gz");
+    EdgeSnapper.load(netFile);
+    RoadNetwork network;
+    try {
+      network = RoadNetwork.load(netFile);
+    } catch (UncheckedIOException | IllegalStateException e) {
+      e.printStackTrace();
+      System.exit(1);
+      return;
+    }
+    Random random = new Random(seed);
+    List<TrafficClass> trafficClasses = List.of(
+        new TrafficClass("passenger_generated", "passenger", PASSENGER_PEAK, PASSENGER_TRIP_SECONDS,
+            TripSampler.withinNetwork(network, "passenger", random)),
+        new TrafficClass("bicycle_generated", "bicycle", BICYCLE_PEAK, BICYCLE_TRIP_SECONDS,
+            TripSampler.withinNetwork(network, "bicycle", random)));
+    for (TrafficClass trafficClass : trafficClasses) {
+      System.out.println(trafficClass.vehicleClass() + " trips use " + trafficClass.trips().originCount() + " origin and "
+          + trafficClass.trips().destinationCount() + " destination edges");
+    }
+    write(outputFile, trafficClasses, begin, end, random);
+  }
+
+  private static void write(File outputFile, List<TrafficClass> trafficClasses, int begin, int end, Random random) {
+    int[] vehicleCounts = new int[trafficClasses.size()];
+    try (OutputStream out = outputFile.getName().endsWith(".gz")
+        ? new GZIPOutputStream(new FileOutputStream(outputFile), 1 << 16) : new FileOutputStream(outputFile);
+         BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16)) {
+      writer.write(String.format(Locale.ROOT, "<!-- begin=\"%d\" end=\"%d\" -->", begin, end));
+      writer.newLine();
+      writer.write("<routes>");
+      writer.newLine();
+      writer.write("    <vType id=\"passenger_generated\" vClass=\"passenger\"/>");
+      writer.newLine();
+      writer.write("    <vType id=\"bicycle_generated\" vClass=\"bicycle\"/>");
+      writer.newLine();
+      // seconds are generated in order, so the file is sorted by departure without buffering it
+      for (int seconds = begin; seconds < end; seconds++) {
+        for (int c = 0; c < trafficClasses.size(); c++) {
+          TrafficClass trafficClass = trafficClasses.get(c);
+          int departures = poisson(random, departureRate(trafficClass, seconds, begin));
+          for (int i = 0; i < departures; i++) {
+            String[] fromTo = trafficClass.trips().randomTrip();
+            writer.write(String.format(Locale.ROOT,
+                "    <trip id=\"%s_%d\" type=\"%s\" depart=\"%d\" from=\"%s\" to=\"%s\" departLane=\"best\"%s/>",
+                trafficClass.vehicleType(), vehicleCounts[c]++, trafficClass.vehicleType(), seconds - begin,
+                fromTo[0], fromTo[1], trafficClass.vehicleClass().equals("passenger") ? grayColor(random) : ""));
+            writer.newLine();
+          }
+        }
+      }
+      writer.write("</routes>");
+      writer.newLine();
+    } catch (IOException e) {
+      e.printStackTrace();
+      System.exit(1);
+    }
+    for (int c = 0; c < trafficClasses.size(); c++) {
+      System.out.println("Wrote " + vehicleCounts[c] + " " + trafficClasses.get(c).vehicleType() + " trips to " + outputFile.getAbsolutePath());
+    }
+  }
+
+  // begin and end the file was generated for, or null if it has no such comment
+  static int[] timeSpan(File trafficFile) {
+    try (InputStream in = trafficFile.getName().endsWith(".gz")
+        ? new GZIPInputStream(new FileInputStream(trafficFile)) : new FileInputStream(trafficFile);
+         BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+      String firstLine = reader.readLine();
+      Matcher matcher = TIME_SPAN.matcher(firstLine != null ? firstLine : "");
+      return matcher.matches() ? new int[]{Integer.parseInt(matcher.group(1)), Integer.parseInt(matcher.group(2))} : null;
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not read " + trafficFile.getAbsolutePath(), e);
+    }
+  }
+
+  private static double departureRate(TrafficClass trafficClass, int seconds, int begin) {
+    double onRoad = VanSimulation.expectedNumber(seconds / (double) (24 * 60 * 60), trafficClass.peak());
+    double nextOnRoad = VanSimulation.expectedNumber((seconds + 1) / (double) (24 * 60 * 60), trafficClass.peak());
+    double rate = onRoad / trafficClass.meanTripSeconds() + Math.max(0, nextOnRoad - onRoad);
+    if (seconds - begin < WARM_UP_SECONDS) {
+      rate += VanSimulation.expectedNumber(begin / (double) (24 * 60 * 60), trafficClass.peak()) / WARM_UP_SECONDS;
+    }
+    return rate;
+  }
+
+  private static int poisson(Random random, double lambda) {
+    double limit = Math.exp(-lambda);
+    double product = random.nextDouble();
+    int count = 0;
+    while (product > limit) {
+      product *= random.nextDouble();
+      count++;
+    }
+    return count;
+  }
+
+  private static String grayColor(Random random) {
+    int gray = random.nextInt(130, 256);
+    return " color=\"" + gray + "," + gray + "," + gray + "\"";
+  }
+}
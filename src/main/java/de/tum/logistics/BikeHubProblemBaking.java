@@ -1,14 +1,23 @@
 package de.tum.logistics;
 
 import java.io.File;
+import java.io.UncheckedIOException;
 import java.util.List;
 
 import org.eclipse.sumo.libtraci.Simulation;
 import org.eclipse.sumo.libtraci.StringVector;
 
+import de.tum.logistics.osm.AddressSnapshot;
 import de.tum.logistics.osm.DepotNode;
 import de.tum.logistics.osm.GeoJsonParser;
+import de.tum.logistics.osm.OsmNode;
+import de.tum.logistics.problems.GraphBasedRoutingCost;
 import de.tum.logistics.problems.MicroHubDeliveryProblem;
+import de.tum.logistics.problems.serialization.RouteXmlReader;
+import de.tum.logistics.routing.EdgeSnapper;
+import de.tum.logistics.routing.NetworkCache;
+import de.tum.logistics.routing.Reachability;
+import de.tum.logistics.routing.RoadNetwork;
 import me.tongfei.progressbar.ProgressBar;
 
 import org.eclipse.sumo.libtraci.VehicleType;
@@ -21,28 +30,63 @@ public class BikeHubProblemBaking {
     Simulation.start(new StringVector(new String[]{"sumo", "-W", "-n", netFile.getAbsolutePath()}));
     VehicleType.copy("DEFAULT_BIKETYPE", "bicycle");
     VehicleType.copy("DEFAULT_VEHTYPE", "passenger");
+    NetworkCache networkCache = NetworkCache.open(netFile, "bicycle", new File(BikeHubSimulation.RESOURCE_FOLDER, "bicycle.cache"));
+    EdgeSnapper.load(netFile);
+    RoadNetwork network;
+    try {
+      network = RoadNetwork.load(netFile);
+    } catch (UncheckedIOException | IllegalStateException e) {
+      e.printStackTrace();
+      Simulation.close("Could not load the road network");
+      System.exit(1);
+      return;
+    }
 
-    List<DepotNode> depotNodes = GeoJsonParser.parseDepotNodes(new File(BikeHubSimulation.RESOURCE_FOLDER, "depots.json"));
+    List<DepotNode> depotNodes = loadRoutableDepots(networkCache, network);
+
+    GraphBasedRoutingCost routingCost = new GraphBasedRoutingCost("bicycle",
+        GraphBasedRoutingCost.Backend.CONTRACTION_HIERARCHY, new File(BikeHubSimulation.RESOURCE_FOLDER, "bicycle.ch"));
+    routingCost.setup(network);
+
+    MicroHubDeliveryProblem problem = new MicroHubDeliveryProblem();
+    problem.init(15000, depotNodes, routingCost);
+    problem.setInitialRoutes(RouteXmlReader.read(new File(BikeHubSimulation.RESOURCE_FOLDER, "routes_bikes.xml")));
+    problem.solve();
+    problem.writeRouteXML(new File(BikeHubSimulation.RESOURCE_FOLDER, "routes_bikes.xml"), "monopoly", "#FFFF00");
+    problem.plotSolution(BikeHubSimulation.RESOURCE_FOLDER);
+
+    NetworkCache.saveAll();
+    Simulation.close("Done!");
+    System.exit(0);
+  }
+
+  // depots with their routable addresses from the snapshot of an earlier run, filtered and snapshotted again if
+  // network or depots changed
+  static List<DepotNode> loadRoutableDepots(NetworkCache networkCache, RoadNetwork network) {
+    File depotFile = new File(BikeHubSimulation.RESOURCE_FOLDER, "depots.json");
+    File snapshotFile = new File(BikeHubSimulation.RESOURCE_FOLDER, "depots_bicycle.snapshot");
+    byte[] sourceHash = AddressSnapshot.sourceHash(networkCache, depotFile);
+    AddressSnapshot snapshot = AddressSnapshot.open(snapshotFile, sourceHash);
+    if (snapshot != null) {
+      snapshot.seed(OsmNode.snapCache());
+      return snapshot.depots();
+    }
+    List<DepotNode> depotNodes = GeoJsonParser.parseDepotNodes(depotFile);
+    Reachability reachability = Reachability.fromNetwork(network, "bicycle");
     ProgressBar routableCheck = new ProgressBar("Checking routability of depot addresses", depotNodes.stream().mapToInt(d -> d.nodes().size()).sum());
     depotNodes = depotNodes.stream()
         .map(d -> {
-          DepotNode mapped = d.withoutUnroutableNodes("bicycle");
+          DepotNode mapped = d.withoutUnroutableNodes("bicycle", reachability);
           routableCheck.stepBy(d.nodes().size());
           return mapped;
         })
         .filter(d -> !d.nodes().isEmpty())
         .toList();
     routableCheck.close();
+    System.out.println("Snap cache: " + OsmNode.snapCache());
     System.out.println(depotNodes.stream().mapToInt(d -> d.nodes().size()).sum() + " addresses are routable by bike.");
-
-    MicroHubDeliveryProblem problem = new MicroHubDeliveryProblem();
-    problem.init(15000, depotNodes);
-    problem.solve();
-    problem.writeRouteXML(new File(BikeHubSimulation.RESOURCE_FOLDER, "routes_bikes.xml"), "monopoly", "#FFFF00");
-    problem.plotSolution(BikeHubSimulation.RESOURCE_FOLDER);
-
-    Simulation.close("Done!");
-    System.exit(0);
+    AddressSnapshot.writeDepots(snapshotFile, sourceHash, "bicycle", depotNodes);
+    return depotNodes;
   }
 
 }
\ No newline at end of file
@@ -1,11 +1,14 @@
 package de.tum.logistics;
 
+import de.tum.logistics.metrics.DeliveryMetrics;
+import de.tum.logistics.metrics.VehicleObserver;
+import de.tum.logistics.routing.EdgeSnapper;
+import de.tum.logistics.routing.RoadNetwork;
 import org.eclipse.sumo.libtraci.*;
 
 import java.io.File;
+import java.io.UncheckedIOException;
 import java.util.*;
-import java.util.concurrent.ThreadLocalRandom;
-import java.util.concurrent.atomic.AtomicLong;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
@@ -18,98 +21,126 @@ public class BikeHubSimulation {
 
   public static void main(String[] args) {
     System.loadLibrary("libtracijni");
-    File configFile = new File(RESOURCE_FOLDER, "the.sumocfg");
-    Simulation.start(new StringVector(new String[]{"sumo-gui", "-c", configFile.getAbsolutePath()}));
+    SimulationOptions options = SimulationOptions.parse(args, RESOURCE_FOLDER, SIMULATION_STEP_BEGINNING, SIMULATION_STEP_END);
+    Simulation.start(options.sumoCommand());
     TraCPositionVector boundary = Simulation.getNetBoundary().getValue();
     fromBoundary = boundary.get(0);
     toBoundary = boundary.get(1);
+    EdgeSnapper.load(new File(RESOURCE_FOLDER, "osm.net.xml.gz"));
+    RoadNetwork network;
+    try {
+      network = RoadNetwork.load(new File(RESOURCE_FOLDER, "osm.net.xml.gz"));
+    } catch (UncheckedIOException | IllegalStateException e) {
+      e.printStackTrace();
+      Simulation.close("Could not load the road network");
+      System.exit(1);
+      return;
+    }
 
-    for (String s : VehicleType.getIDList()) {
-      System.out.println(s);
+    if (options.logInterval() > 0) {
+      for (String s : VehicleType.getIDList()) {
+        System.out.println(s);
+      }
     }
 
-    VehicleType.copy("DEFAULT_VEHTYPE", "passenger_generated");
-    VehicleType.copy("DEFAULT_BIKETYPE", "bicycle_generated");
+    // pre-generated background traffic is inserted by sumo, otherwise the step loop adds the vehicles
+    boolean backgroundTraffic = options.backgroundTraffic() != null;
+    VehicleObserver observer = new VehicleObserver(List.of("passenger_generated", "bicycle_generated", "delivery"),
+        VanSimulation::vehicleCategory, vehicleId -> vehicleId.startsWith("delivery_"), options.stepLength());
+    RandomRouteGenerator pkwRouteGen = null;
+    RandomRouteGenerator bikeRouteGen = null;
+    if (!backgroundTraffic) {
+      VehicleType.copy("DEFAULT_VEHTYPE", "passenger_generated");
+      VehicleType.copy("DEFAULT_BIKETYPE", "bicycle_generated");
 
-    RandomRouteGenerator pkwRouteGen = new RandomRouteGenerator("passenger_generated", "passenger", 10000, fromBoundary, toBoundary);
-    RandomRouteGenerator bikeRouteGen = new RandomRouteGenerator("bicycle_generated", "bicycle", 5000, fromBoundary, toBoundary);
-    pkwRouteGen.startPopulatingThread();
-    bikeRouteGen.startPopulatingThread();
+      pkwRouteGen = new RandomRouteGenerator("passenger", 10000, network, fromBoundary, toBoundary, options.random("passenger"));
+      bikeRouteGen = new RandomRouteGenerator("bicycle", 5000, network, fromBoundary, toBoundary, options.random("bicycle"));
+      pkwRouteGen.startPopulatingThread();
+      bikeRouteGen.startPopulatingThread();
 
-    // populate with some vehicles so simulation doesn't stop
-    for (int i = 0; i < 5; i++) {
-      String routeId = pkwRouteGen.fetchRandomRouteBlocking();
-      if (routeId != null) {
-        Vehicle.add("start_" + i, routeId, "passenger_generated");
+      // populate with some vehicles so simulation doesn't stop
+      for (int i = 0; i < 5; i++) {
+        Vehicle.add("start_" + i, pkwRouteGen.fetchRandomRouteBlocking(), "passenger_generated");
+        observer.added("passenger_generated");
       }
     }
 
-    AtomicLong totalVehicles = new AtomicLong(0);
-    Map<String, AtomicLong> activeVehiclesByType = new HashMap<>();
-    Map<String, String> vehicleIdToType = new HashMap<>();
-
     int vehicleId = 0;
-    for (int seconds = SIMULATION_STEP_BEGINNING; seconds < SIMULATION_STEP_END; seconds++) {
+    Random colors = options.random("colors");
+    long steps = options.steps();
+    long stepsPerLog = options.stepsPerLog();
+    int maxAddedMotorVehicles = options.perStep(20);
+    int maxAddedVehicles = options.perStep(5);
+    DeliveryMetrics metrics = new DeliveryMetrics(options.metricsFile(), options.metricsInterval(), options.begin());
+    long wallStart = System.nanoTime();
+    for (long step = 0; step < steps; step++) {
+      long stepStart = System.nanoTime();
       Simulation.step();
-      String timeOfDay = String.format("%02d:%02d:%02d", seconds / 3600, (seconds % 3600) / 60, seconds % 60);
-      long motorVehiclesOnRoad = activeVehiclesByType.computeIfAbsent("passenger_generated", k -> new AtomicLong(0)).get();
-      long expectedMotorVehicles = (int) expectedNumber((double) seconds / (double)(24*60*60), 3000);
-      long bikeVehiclesOnRoad = activeVehiclesByType.computeIfAbsent("bicycle_generated", k -> new AtomicLong(0)).get();
-      long expectedBikeVehicles = (int) expectedNumber((double) seconds / (double)(24*60*60), 1000);
-      if (seconds % 30 == 0) {
-        System.out.println(timeOfDay + ": " + motorVehiclesOnRoad + "/" + expectedMotorVehicles + " cars, " + bikeVehiclesOnRoad + "/" + expectedBikeVehicles + " bikes");
+      observer.update();
+      long traciNanos = System.nanoTime() - stepStart;
+      double seconds = options.begin() + step * options.stepLength();
+      metrics.update(observer, seconds);
+      long motorVehiclesOnRoad = observer.active("passenger_generated");
+      long expectedMotorVehicles = (int) expectedNumber(seconds / (double)(24*60*60), 3000);
+      long bikeVehiclesOnRoad = observer.active("bicycle_generated");
+      long expectedBikeVehicles = (int) expectedNumber(seconds / (double)(24*60*60), 1000);
+      if (stepsPerLog > 0 && step % stepsPerLog == 0) {
+        int second = (int) seconds;
+        String timeOfDay = String.format("%02d:%02d:%02d", second / 3600, (second % 3600) / 60, second % 60);
+        System.out.println(timeOfDay + ": " + motorVehiclesOnRoad + "/" + expectedMotorVehicles + " cars, " + bikeVehiclesOnRoad + "/" + expectedBikeVehicles + " bikes, " + observer.active("delivery") + " delivery vehicles");
       }
 
-      StringVector arrived = Simulation.getArrivedIDList();
-      for (String arrivedVehicleId : arrived) {
-        String type = vehicleIdToType.get(arrivedVehicleId);
-        if (type != null) {
-          activeVehiclesByType.computeIfAbsent(type, k -> new AtomicLong(1)).decrementAndGet();
-        }
-        totalVehicles.decrementAndGet();
-        vehicleIdToType.remove(arrivedVehicleId);
-      }
+      metrics.maybeExport(observer, seconds, expectedMotorVehicles, expectedBikeVehicles);
 
+      if (backgroundTraffic) {
+        metrics.recordStep(traciNanos, System.nanoTime() - stepStart);
+        continue;
+      }
+      // only the TraCI calls count as TraCI time, waiting for a sampled trip is Java time
       int added = 0;
-      while (motorVehiclesOnRoad < expectedMotorVehicles && added < 20) {
+      while (motorVehiclesOnRoad < expectedMotorVehicles && added < maxAddedMotorVehicles) {
         String routeId = pkwRouteGen.fetchRandomRouteBlocking();
-        if (routeId == null) {
-          continue;
-        }
         String vehID = "vehicle_passenger_" + vehicleId++;
         String vehicleClass = "passenger_generated";
+        int gray = colors.nextInt(130, 256);
+        long traciStart = System.nanoTime();
         try {
           Vehicle.add(vehID, routeId, vehicleClass);
-          int gray = ThreadLocalRandom.current().nextInt(130, 256);
           Vehicle.setColor(vehID, new TraCIColor(gray, gray, gray, 255));
         } catch (Exception tryAgain) {
           continue;
+        } finally {
+          traciNanos += System.nanoTime() - traciStart;
         }
         motorVehiclesOnRoad++;
         added++;
-        totalVehicles.incrementAndGet();
-        activeVehiclesByType.computeIfAbsent(vehicleClass, k -> new AtomicLong(0)).incrementAndGet();
-        vehicleIdToType.put(vehID, vehicleClass);
+        observer.added(vehicleClass);
       }
-      while (bikeVehiclesOnRoad < expectedBikeVehicles && added < 5) {
+      while (bikeVehiclesOnRoad < expectedBikeVehicles && added < maxAddedVehicles) {
         String routeId = bikeRouteGen.fetchRandomRouteBlocking();
-        if (routeId == null) {
-          continue;
-        }
         String vehID = "vehicle_bike_" + vehicleId++;
         String vehicleClass = "bicycle_generated";
+        long traciStart = System.nanoTime();
         try {
           Vehicle.add(vehID, routeId, vehicleClass);
         } catch (Exception tryAgain) {
           continue;
+        } finally {
+          traciNanos += System.nanoTime() - traciStart;
         }
         bikeVehiclesOnRoad++;
         added++;
-        totalVehicles.incrementAndGet();
-        activeVehiclesByType.computeIfAbsent(vehicleClass, k -> new AtomicLong(0)).incrementAndGet();
-        vehicleIdToType.put(vehID, vehicleClass);
+        observer.added(vehicleClass);
       }
+      metrics.recordStep(traciNanos, System.nanoTime() - stepStart);
     }
+    double end = options.end();
+    metrics.export(observer, end, (long) expectedNumber(end / (24*60*60), 3000), (long) expectedNumber(end / (24*60*60), 1000));
+    metrics.close();
+    metrics.printSummary();
+    double wallSeconds = (System.nanoTime() - wallStart) / 1e9;
+    System.out.printf("Simulated %d seconds in %.1f seconds, %.1f simulated seconds per second%n",
+        options.end() - options.begin(), wallSeconds, (options.end() - options.begin()) / wallSeconds);
     Simulation.close();
   }
 
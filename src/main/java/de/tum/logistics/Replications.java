@@ -0,0 +1,270 @@
+package de.tum.logistics;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.math3.distribution.TDistribution;
+import org.apache.commons.math3.stat.descriptive.SummaryStatistics;
+
+// Runs independent replications of a simulation and aggregates their trip info and statistics output into means with
+// 95% confidence intervals. libtraci only drives one connection per process at a time, so every replication is a
+// child JVM running the simulation headless with its own sumo seed and output folder.
+//
+//   Replications [--simulation van|bikes] [--replications K] [--parallel P] [--seed S] [-- <simulation options>]
+//
+// Replication i uses seed S+i. Results go to replications/<simulation>/ in the resource folder.
+public class Replications {
+  private static final double CONFIDENCE = 0.95;
+
+  public static void main(String[] args) {
+    String simulation = "van";
+    int replications = 10;
+    int parallel = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    long baseSeed = 1;
+    List<String> simulationArgs = new ArrayList<>();
+    try {
+      for (int i = 0; i < args.length; i++) {
+        switch (args[i]) {
+          case "--simulation" -> simulation = args[++i];
+          case "--replications" -> replications = Integer.parseInt(args[++i]);
+          case "--parallel" -> parallel = Integer.parseInt(args[++i]);
+          case "--seed" -> baseSeed = Long.parseLong(args[++i]);
+          case "--" -> {
+            simulationArgs.addAll(Arrays.asList(args).subList(i + 1, args.length));
+            i = args.length;
+          }
+          default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+        }
+      }
+      if (replications < 2) {
+        throw new IllegalArgumentException("Confidence intervals need at least two replications");
+      }
+    } catch (RuntimeException e) {
+      System.err.println(e.getMessage() != null ? e.getMessage() : "Missing option value");
+      System.exit(1);
+    }
+    Class<?> mainClass = switch (simulation) {
+      case "van" -> VanSimulation.class;
+      case "bikes" -> BikeHubSimulation.class;
+      default -> {
+        System.err.println("Unknown simulation " + simulation + ", expected van or bikes");
+        System.exit(1);
+        yield null;
+      }
+    };
+
+    File outputFolder = new File(new File(VanSimulation.RESOURCE_FOLDER, "replications"), simulation);
+    parallel = Math.min(parallel, replications);
+    System.out.println("Running " + replications + " replications of " + mainClass.getSimpleName() + ", " + parallel + " at a time");
+
+    Instant start = Instant.now();
+    ExecutorService pool = Executors.newFixedThreadPool(parallel);
+    List<Map<String, Double>> results = new ArrayList<>();
+    try {
+      List<Future<Map<String, Double>>> futures = new ArrayList<>();
+      for (int i = 0; i < replications; i++) {
+        long seed = baseSeed + i;
+        File replicationFolder = new File(outputFolder, "rep_" + i);
+        futures.add(pool.submit(() -> runReplication(mainClass, seed, replicationFolder, simulationArgs)));
+      }
+      for (int i = 0; i < replications; i++) {
+        Map<String, Double> result = futures.get(i).get();
+        if (result != null) {
+          results.add(result);
+        }
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } catch (ExecutionException e) {
+      e.printStackTrace();
+    } finally {
+      pool.shutdownNow();
+    }
+    System.out.println(results.size() + " of " + replications + " replications finished after "
+        + Duration.between(start, Instant.now()).toSeconds() + " seconds");
+    if (results.size() < 2) {
+      System.err.println("Not enough replications finished for confidence intervals");
+      System.exit(1);
+    }
+    writeResults(outputFolder, results);
+  }
+
+  private static Map<String, Double> runReplication(Class<?> mainClass, long seed, File folder, List<String> simulationArgs)
+      throws IOException, InterruptedException {
+    folder.mkdirs();
+    List<String> command = new ArrayList<>(List.of(
+        new File(new File(System.getProperty("java.home"), "bin"), "java").getAbsolutePath(),
+        "-cp", System.getProperty("java.class.path"),
+        "-Djava.library.path=" + System.getProperty("java.library.path"),
+        mainClass.getName(),
+        "--headless", "--log-interval", "0"));
+    command.addAll(simulationArgs);
+    command.addAll(List.of("--seed", Long.toString(seed), "--output", folder.getAbsolutePath()));
+
+    Instant start = Instant.now();
+    Process process = new ProcessBuilder(command)
+        .directory(new File(System.getProperty("user.dir")))
+        .redirectErrorStream(true)
+        .redirectOutput(new File(folder, "log.txt"))
+        .start();
+    int exitCode = process.waitFor();
+    double wallSeconds = Duration.between(start, Instant.now()).toMillis() / 1000d;
+    if (exitCode != 0) {
+      System.err.println("Replication with seed " + seed + " failed with exit code " + exitCode + ", see " + new File(folder, "log.txt"));
+      return null;
+    }
+
+    Map<String, Double> result = new LinkedHashMap<>();
+    result.put("seed", (double) seed);
+    result.put("wall_seconds", wallSeconds);
+    try {
+      readTripInfo(new File(folder, "trips_output.xml"), result);
+      readStatistics(new File(folder, "statistics_output.xml"), result);
+    } catch (IOException | XMLStreamException | RuntimeException e) {
+      System.err.println("Could not read the output of the replication with seed " + seed);
+      e.printStackTrace();
+      return null;
+    }
+    System.out.println("Replication with seed " + seed + " finished after " + (int) wallSeconds + " seconds");
+    return result;
+  }
+
+  // delivery vehicles are told apart from the background traffic by their vType, see writeRouteXML
+  private static void readTripInfo(File tripInfoFile, Map<String, Double> result) throws IOException, XMLStreamException {
+    SummaryStatistics deliveryDuration = new SummaryStatistics();
+    SummaryStatistics deliveryTimeLoss = new SummaryStatistics();
+    SummaryStatistics timeLoss = new SummaryStatistics();
+    double deliveryDistance = 0;
+    double deliveryCo2 = 0;
+    double deliveryNox = 0;
+    boolean delivery = false;
+    try (InputStream in = new BufferedInputStream(new FileInputStream(tripInfoFile), 1 << 16)) {
+      XMLStreamReader reader = XMLInputFactory.newFactory().createXMLStreamReader(in);
+      while (reader.hasNext()) {
+        if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+          continue;
+        }
+        if (reader.getLocalName().equals("tripinfo")) {
+          String vehicleType = reader.getAttributeValue(null, "vType");
+          delivery = vehicleType != null && vehicleType.startsWith("delivery");
+          double vehicleTimeLoss = Double.parseDouble(reader.getAttributeValue(null, "timeLoss"));
+          timeLoss.addValue(vehicleTimeLoss);
+          if (delivery) {
+            deliveryDuration.addValue(Double.parseDouble(reader.getAttributeValue(null, "duration")));
+            deliveryTimeLoss.addValue(vehicleTimeLoss);
+            deliveryDistance += Double.parseDouble(reader.getAttributeValue(null, "routeLength"));
+          }
+        } else if (reader.getLocalName().equals("emissions") && delivery) {
+          deliveryCo2 += Double.parseDouble(reader.getAttributeValue(null, "CO2_abs"));
+          deliveryNox += Double.parseDouble(reader.getAttributeValue(null, "NOx_abs"));
+        }
+      }
+      reader.close();
+    }
+    result.put("vehicles", (double) timeLoss.getN());
+    result.put("time_loss_mean_s", timeLoss.getMean());
+    result.put("delivery_vehicles", (double) deliveryDuration.getN());
+    result.put("delivery_duration_mean_s", deliveryDuration.getMean());
+    result.put("delivery_duration_max_s", deliveryDuration.getMax());
+    result.put("delivery_time_loss_mean_s", deliveryTimeLoss.getMean());
+    result.put("delivery_distance_km", deliveryDistance / 1000);
+    // sumo reports emissions in mg
+    result.put("delivery_co2_kg", deliveryCo2 / 1e6);
+    result.put("delivery_nox_g", deliveryNox / 1e3);
+  }
+
+  private static void readStatistics(File statisticsFile, Map<String, Double> result) throws IOException, XMLStreamException {
+    try (InputStream in = new BufferedInputStream(new FileInputStream(statisticsFile))) {
+      XMLStreamReader reader = XMLInputFactory.newFactory().createXMLStreamReader(in);
+      while (reader.hasNext()) {
+        if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+          continue;
+        }
+        switch (reader.getLocalName()) {
+          case "vehicles" -> result.put("inserted", attribute(reader, "inserted"));
+          case "teleports" -> result.put("teleports", attribute(reader, "total"));
+          case "safety" -> result.put("collisions", attribute(reader, "collisions"));
+          case "vehicleTripStatistics" -> {
+            result.put("trip_duration_mean_s", attribute(reader, "duration"));
+            result.put("trip_route_length_mean_m", attribute(reader, "routeLength"));
+          }
+          default -> {
+          }
+        }
+      }
+      reader.close();
+    }
+  }
+
+  private static double attribute(XMLStreamReader reader, String name) {
+    String value = reader.getAttributeValue(null, name);
+    return value == null ? Double.NaN : Double.parseDouble(value);
+  }
+
+  private static void writeResults(File outputFolder, List<Map<String, Double>> results) {
+    List<String> metrics = new ArrayList<>(results.getFirst().keySet());
+    try (BufferedWriter writer = new BufferedWriter(new FileWriter(new File(outputFolder, "replications.csv")))) {
+      writer.write(String.join(",", metrics));
+      writer.newLine();
+      for (Map<String, Double> result : results) {
+        writer.write(String.join(",", metrics.stream()
+            .map(metric -> String.format(Locale.ROOT, "%.4f", result.getOrDefault(metric, Double.NaN))).toList()));
+        writer.newLine();
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+
+    try (BufferedWriter writer = new BufferedWriter(new FileWriter(new File(outputFolder, "summary.csv")))) {
+      writer.write("metric,n,mean,stddev,ci_low,ci_high");
+      writer.newLine();
+      for (String metric : metrics) {
+        if (metric.equals("seed")) {
+          continue;
+        }
+        SummaryStatistics statistics = new SummaryStatistics();
+        for (Map<String, Double> result : results) {
+          double value = result.getOrDefault(metric, Double.NaN);
+          if (!Double.isNaN(value)) {
+            statistics.addValue(value);
+          }
+        }
+        double halfWidth = Double.NaN;
+        if (statistics.getN() > 1) {
+          double t = new TDistribution(statistics.getN() - 1).inverseCumulativeProbability(1 - (1 - CONFIDENCE) / 2);
+          halfWidth = t * statistics.getStandardDeviation() / Math.sqrt(statistics.getN());
+        }
+        String line = String.format(Locale.ROOT, "%s,%d,%.4f,%.4f,%.4f,%.4f", metric, statistics.getN(),
+            statistics.getMean(), statistics.getStandardDeviation(),
+            statistics.getMean() - halfWidth, statistics.getMean() + halfWidth);
+        writer.write(line);
+        writer.newLine();
+        System.out.println(line);
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+}
@@ -0,0 +1,172 @@
+package de.tum.logistics;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.eclipse.sumo.libtraci.Simulation;
+import org.eclipse.sumo.libtraci.StringVector;
+import org.eclipse.sumo.libtraci.VehicleType;
+
+import com.graphhopper.jsprit.core.problem.solution.VehicleRoutingProblemSolution;
+import de.tum.logistics.osm.OsmNode;
+import de.tum.logistics.problems.GraphBasedRoutingCost;
+import de.tum.logistics.problems.TruckDeliveryProblem;
+import de.tum.logistics.problems.serialization.RouteXmlReader;
+import de.tum.logistics.routing.EdgeSnapper;
+import de.tum.logistics.routing.NetworkCache;
+import de.tum.logistics.routing.RoadNetwork;
+
+// Bakes the van routes of many scenarios in one process. Network, routable addresses and the routing cost with its
+// distance cache are loaded once and shared by all scenarios, the solves run in parallel.
+//
+// Scenario file (first argument, defaults to scenarios.csv in the resource folder), one carrier per line:
+//   scenario,carrier,parcels,share,capacity,seed,color
+// The seed is mixed with the carrier, so the carriers of one scenario draw different addresses from the same seed.
+// Routes go to sweep/<scenario>/routes_<carrier>.xml.gz, one summary line per carrier to sweep/summary.csv.
+// -Dsweep.parallel sets the number of scenarios solved at once, and with it how many problems are held in memory.
+public class ScenarioSweep {
+  private static final File SWEEP_FOLDER = new File(VanSimulation.RESOURCE_FOLDER, "sweep");
+  private static final String EMISSION_CLASS = "LCV_diesel_N1-III_Euro-6d";
+
+  private record Scenario(String name, String carrier, int parcels, double share, int capacity, long seed, String color) {
+    File routesFile() {
+      return new File(new File(SWEEP_FOLDER, name), "routes_" + carrier + ".xml.gz");
+    }
+  }
+
+  private record Solve(Scenario scenario, TruckDeliveryProblem problem, Future<Duration> solveTime) {}
+
+  public static void main(String[] args) {
+    File scenarioFile = args.length > 0 ? new File(args[0]) : new File(VanSimulation.RESOURCE_FOLDER, "scenarios.csv");
+    List<Scenario> scenarios = parseScenarios(scenarioFile);
+    System.out.println("Loaded " + scenarios.size() + " scenarios from " + scenarioFile.getAbsolutePath());
+
+    System.loadLibrary("libtracijni");
+    File netFile = new File(VanSimulation.RESOURCE_FOLDER, "osm.net.xml.gz");
+    Simulation.start(new StringVector(new String[]{"sumo", "-W", "-n", netFile.getAbsolutePath()}));
+    VehicleType.copy("DEFAULT_VEHTYPE", "passenger");
+    NetworkCache networkCache = NetworkCache.open(netFile, "passenger", new File(VanSimulation.RESOURCE_FOLDER, "passenger.cache"));
+    EdgeSnapper.load(netFile);
+    RoadNetwork network;
+    try {
+      network = RoadNetwork.load(netFile);
+    } catch (UncheckedIOException | IllegalStateException e) {
+      e.printStackTrace();
+      Simulation.close("Could not load the road network");
+      System.exit(1);
+      return;
+    }
+
+    List<OsmNode> possibleLocations = VanProblemBaking.loadRoutableLocations(networkCache, network);
+
+    GraphBasedRoutingCost routingCost = new GraphBasedRoutingCost("passenger",
+        GraphBasedRoutingCost.Backend.CONTRACTION_HIERARCHY, new File(VanSimulation.RESOURCE_FOLDER, "passenger.ch"));
+    routingCost.setup(network);
+
+    int cpus = Runtime.getRuntime().availableProcessors();
+    int parallel = Math.clamp(Integer.getInteger("sweep.parallel", Math.max(1, cpus / 4)), 1, scenarios.size());
+    int threadsPerSolve = Math.max(1, cpus / parallel);
+    System.out.println("Solving " + parallel + " scenarios at once with " + threadsPerSolve + " threads each");
+
+    Instant sweepStart = Instant.now();
+    ExecutorService solvePool = Executors.newFixedThreadPool(parallel);
+    SWEEP_FOLDER.mkdirs();
+    try (BufferedWriter summary = new BufferedWriter(new FileWriter(new File(SWEEP_FOLDER, "summary.csv")))) {
+      summary.write("scenario,carrier,parcels,share,capacity,seed,vehicles,stops,unassigned,cost,solve_seconds");
+      summary.newLine();
+      // problems are set up and written on this thread because snapping may fall back to the single TraCI
+      // connection, only the solves themselves run in the pool. Each problem holds a dense stop matrix, so the
+      // oldest one is written and dropped before another is set up once parallel problems are in flight
+      ArrayDeque<Solve> solves = new ArrayDeque<>();
+      for (Scenario scenario : scenarios) {
+        if (solves.size() == parallel) {
+          writeResult(solves.poll(), summary);
+        }
+        TruckDeliveryProblem problem = new TruckDeliveryProblem();
+        problem.setVehicleCapacity(scenario.capacity());
+        problem.setSeed(scenario.seed() * 31 + scenario.carrier().hashCode());
+        problem.setThreads(threadsPerSolve);
+        problem.init(possibleLocations, (int) (scenario.parcels() * scenario.share()), routingCost);
+        problem.setInitialRoutes(RouteXmlReader.read(scenario.routesFile()));
+        solves.add(new Solve(scenario, problem, solvePool.submit(() -> {
+          Instant start = Instant.now();
+          problem.solve();
+          return Duration.between(start, Instant.now());
+        })));
+      }
+      while (!solves.isEmpty()) {
+        writeResult(solves.poll(), summary);
+      }
+    } catch (IOException | ExecutionException e) {
+      e.printStackTrace();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    } finally {
+      solvePool.shutdownNow();
+    }
+    System.out.println("Sweep finished after " + Duration.between(sweepStart, Instant.now()).toSeconds() + " seconds");
+
+    NetworkCache.saveAll();
+    Simulation.close("Done!");
+    System.exit(0);
+  }
+
+  private static void writeResult(Solve solve, BufferedWriter summary)
+      throws IOException, ExecutionException, InterruptedException {
+    Scenario scenario = solve.scenario();
+    TruckDeliveryProblem problem = solve.problem();
+    Duration solveTime = solve.solveTime().get();
+    scenario.routesFile().getParentFile().mkdirs();
+    problem.writeRouteXML(scenario.routesFile(), scenario.carrier(), scenario.color(), EMISSION_CLASS);
+
+    VehicleRoutingProblemSolution solution = problem.getSolution();
+    int stops = solution.getRoutes().stream().mapToInt(route -> route.getTourActivities().getJobs().size()).sum();
+    summary.write(String.format(Locale.ROOT, "%s,%s,%d,%.4f,%d,%d,%d,%d,%d,%.1f,%d",
+        scenario.name(), scenario.carrier(), scenario.parcels(), scenario.share(), scenario.capacity(),
+        scenario.seed(), solution.getRoutes().size(), stops, solution.getUnassignedJobs().size(),
+        solution.getCost(), solveTime.toSeconds()));
+    summary.newLine();
+    summary.flush();
+  }
+
+  private static List<Scenario> parseScenarios(File scenarioFile) {
+    List<Scenario> scenarios = new ArrayList<>();
+    try {
+      for (String line : Files.readAllLines(scenarioFile.toPath())) {
+        line = line.strip();
+        if (line.isEmpty() || line.startsWith("#") || line.startsWith("scenario,")) {
+          continue;
+        }
+        String[] fields = line.split(",");
+        if (fields.length != 7) {
+          throw new IllegalStateException("Expected 7 fields in scenario line: " + line);
+        }
+        scenarios.add(new Scenario(fields[0].strip(), fields[1].strip(), Integer.parseInt(fields[2].strip()),
+            Double.parseDouble(fields[3].strip()), Integer.parseInt(fields[4].strip()), Long.parseLong(fields[5].strip()),
+            fields[6].strip()));
+      }
+    } catch (IOException | RuntimeException e) {
+      e.printStackTrace();
+      System.exit(1);
+    }
+    if (scenarios.isEmpty()) {
+      System.err.println("No scenarios in " + scenarioFile.getAbsolutePath());
+      System.exit(1);
+    }
+    return scenarios;
+  }
+}
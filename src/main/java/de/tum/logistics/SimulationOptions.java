@@ -0,0 +1,178 @@
+package de.tum.logistics;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.eclipse.sumo.libtraci.StringVector;
+
+// Command line of VanSimulation and BikeHubSimulation. Begin and end are times of day, the sumo clock itself starts
+// at zero at the beginning, which is what the departure times in the baked route files are relative to.
+public record SimulationOptions(File configFile, boolean headless, double stepLength, int begin, int end,
+                                List<File> routeFiles, int logInterval, Long seed, File outputFolder,
+                                File backgroundTraffic, File metricsFile, int metricsInterval) {
+  private static final String USAGE = """
+      Options:
+        --config <file>          sumo configuration (default the.sumocfg in the resource folder)
+        --headless               run sumo instead of sumo-gui
+        --step-length <seconds>  simulated seconds per step (default 1)
+        --begin <time>           time of day to start at, seconds or hh:mm[:ss] (default 07:00)
+        --end <time>             time of day to stop at, seconds or hh:mm[:ss] (default 18:00)
+        --routes <files>         comma separated route files replacing those of the configuration
+        --log-interval <seconds> simulated seconds between status lines, 0 disables them (default 30)
+        --seed <n>               random seed of sumo and of the generated traffic
+        --output <folder>        folder for the trip info and statistics output of the configuration
+        --background-traffic <file>
+                                 pre-generated trips of BackgroundTrafficGenerator inserted by sumo, replacing the
+                                 vehicles otherwise added every step. Must be generated for the same begin and at
+                                 least until the end
+        --metrics <file>         delivery KPIs per carrier as CSV, or JSON lines for files ending in .jsonl
+        --metrics-interval <seconds>
+                                 simulated seconds between metrics rows (default 300)""";
+
+  public static SimulationOptions parse(String[] args, File resourceFolder, int defaultBegin, int defaultEnd) {
+    File configFile = new File(resourceFolder, "the.sumocfg");
+    boolean headless = false;
+    double stepLength = 1;
+    int begin = defaultBegin;
+    int end = defaultEnd;
+    List<File> routeFiles = new ArrayList<>();
+    int logInterval = 30;
+    Long seed = null;
+    File outputFolder = null;
+    File backgroundTraffic = null;
+    File metricsFile = null;
+    int metricsInterval = 300;
+    try {
+      for (int i = 0; i < args.length; i++) {
+        switch (args[i]) {
+          case "--config" -> configFile = new File(args[++i]);
+          case "--headless" -> headless = true;
+          case "--step-length" -> stepLength = Double.parseDouble(args[++i]);
+          case "--begin" -> begin = parseTime(args[++i]);
+          case "--end" -> end = parseTime(args[++i]);
+          case "--routes" -> {
+            for (String routeFile : args[++i].split(",")) {
+              File file = new File(routeFile);
+              routeFiles.add(file.isAbsolute() || file.exists() ? file : new File(resourceFolder, routeFile));
+            }
+          }
+          case "--log-interval" -> logInterval = Integer.parseInt(args[++i]);
+          case "--seed" -> seed = Long.parseLong(args[++i]);
+          case "--output" -> outputFolder = new File(args[++i]);
+          case "--metrics" -> metricsFile = new File(args[++i]);
+          case "--metrics-interval" -> metricsInterval = Integer.parseInt(args[++i]);
+          case "--background-traffic" -> {
+            File file = new File(args[++i]);
+            backgroundTraffic = file.isAbsolute() || file.exists() ? file : new File(resourceFolder, args[i]);
+          }
+          default -> throw new IllegalArgumentException("Unknown option " + args[i]);
+        }
+      }
+      if (stepLength <= 0 || end <= begin || logInterval < 0 || metricsInterval <= 0) {
+        throw new IllegalArgumentException("Step length and intervals must be positive and end after begin");
+      }
+      if (backgroundTraffic != null) {
+        // departures in the file are relative to the begin it was generated for
+        int[] timeSpan = BackgroundTrafficGenerator.timeSpan(backgroundTraffic);
+        if (timeSpan == null || timeSpan[0] != begin || timeSpan[1] < end) {
+          throw new IllegalArgumentException("Background traffic " + backgroundTraffic.getPath()
+              + (timeSpan == null ? " has no begin and end" : " covers " + timeSpan[0] + " to " + timeSpan[1])
+              + ", generate it with BackgroundTrafficGenerator --begin " + begin + " --end " + end);
+        }
+      }
+    } catch (RuntimeException e) {
+      System.err.println(e.getMessage() != null ? e.getMessage() : "Missing option value");
+      System.err.println(USAGE);
+      System.exit(1);
+    }
+    return new SimulationOptions(configFile, headless, stepLength, begin, end, List.copyOf(routeFiles), logInterval,
+        seed, outputFolder, backgroundTraffic, metricsFile, metricsInterval);
+  }
+
+  static int parseTime(String time) {
+    if (!time.contains(":")) {
+      return Integer.parseInt(time);
+    }
+    String[] parts = time.split(":");
+    return Integer.parseInt(parts[0]) * 3600 + Integer.parseInt(parts[1]) * 60
+        + (parts.length > 2 ? Integer.parseInt(parts[2]) : 0);
+  }
+
+  public StringVector sumoCommand() {
+    List<String> command = new ArrayList<>(List.of(headless ? "sumo" : "sumo-gui", "-c", configFile.getAbsolutePath(),
+        "--step-length", Double.toString(stepLength)));
+    List<File> routes = routeFiles;
+    if (backgroundTraffic != null) {
+      // -r replaces the route files of the configuration, so those have to be repeated
+      routes = new ArrayList<>(routeFiles.isEmpty() ? configuredRouteFiles() : routeFiles);
+      routes.add(backgroundTraffic);
+    }
+    if (!routes.isEmpty()) {
+      command.add("-r");
+      command.add(String.join(",", routes.stream().map(File::getAbsolutePath).toList()));
+    }
+    if (seed != null) {
+      command.add("--seed");
+      command.add(Long.toString(seed));
+    }
+    if (outputFolder != null) {
+      outputFolder.mkdirs();
+      command.add("--tripinfo-output");
+      command.add(new File(outputFolder, "trips_output.xml").getAbsolutePath());
+      command.add("--statistic-output");
+      command.add(new File(outputFolder, "statistics_output.xml").getAbsolutePath());
+    }
+    if (logInterval == 0) {
+      command.add("-W");
+    }
+    return new StringVector(command.toArray(new String[0]));
+  }
+
+  private List<File> configuredRouteFiles() {
+    List<File> files = new ArrayList<>();
+    try (InputStream in = new FileInputStream(configFile)) {
+      XMLStreamReader reader = XMLInputFactory.newFactory().createXMLStreamReader(in);
+      while (reader.hasNext()) {
+        if (reader.next() == XMLStreamConstants.START_ELEMENT && reader.getLocalName().equals("route-files")) {
+          for (String routeFile : reader.getAttributeValue(null, "value").split(",")) {
+            File file = new File(routeFile.strip());
+            files.add(file.isAbsolute() ? file : new File(configFile.getAbsoluteFile().getParentFile(), routeFile.strip()));
+          }
+        }
+      }
+      reader.close();
+    } catch (IOException | XMLStreamException e) {
+      e.printStackTrace();
+      System.exit(1);
+    }
+    return files;
+  }
+
+  // independent streams per purpose, reproducible with --seed
+  public Random random(String purpose) {
+    return seed == null ? new Random() : new Random(seed * 31 + purpose.hashCode());
+  }
+
+  public long steps() {
+    return Math.round((end - begin) / stepLength);
+  }
+
+  public long stepsPerLog() {
+    return logInterval == 0 ? 0 : Math.max(1, Math.round(logInterval / stepLength));
+  }
+
+  // spawn caps were tuned for one second steps
+  public int perStep(int perSecond) {
+    return Math.max(1, (int) Math.round(perSecond * stepLength));
+  }
+}
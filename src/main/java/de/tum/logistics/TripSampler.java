@@ -0,0 +1,149 @@
+package de.tum.logistics;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.function.Function;
+
+import de.tum.logistics.routing.EdgeSnapper;
+import de.tum.logistics.routing.Reachability;
+import de.tum.logistics.routing.RoadNetwork;
+import de.tum.logistics.routing.RoadPosition;
+
+// Origins and destinations of the generated traffic: fixed entry and exit edges with the class' probability, otherwise
+// the edge closest to a uniform point within the boundary. Instead of a findRoute per trip, origins have to reach and
+// destinations have to be reachable from a hub edge, which makes every pair routable without TraCI. Sampling runs off
+// the thread stepping the simulation and never calls TraCI.
+final class TripSampler {
+  private static final int HUB_CANDIDATES = 8;
+
+  private final static Function<String, Double> FIXED_ENTRY_EDGE_PROBABILITY = vehicleType ->
+      switch (vehicleType) {
+        case "passenger" -> 0.3;
+        case "bicycle" -> 0.0;
+        default -> 0.1;
+      };
+
+  private final static Function<String, Double> FIXED_EXIT_EDGE_PROBABILITY = vehicleType ->
+      switch (vehicleType) {
+        case "passenger" -> 0.3;
+        case "bicycle" -> 0.0;
+        default -> 0.1;
+      };
+
+  private final static String[] CACHED_ENTRY_POSITIONS = {
+      "283871244",
+      "209452708#0",
+      "310823109#0",
+      "292767093#0",
+      "33548773#0",
+      "244456569#2",
+      "365762134#0",
+      "4273045",
+      "48339065"
+  };
+  private final static String[] CACHED_EXIT_POSITIONS = {
+      "145433978",
+      "276604363#1",
+      "27822842",
+      "923916236#1",
+      "85004762#1",
+      "40317919#0",
+      "144814421",
+      "429424687"
+  };
+
+  private final String vehicleClass;
+  private final Random random;
+  private final double minX, minY, maxX, maxY;
+  private final Set<String> origins;
+  private final Set<String> destinations;
+  private final List<String> allowedEdges;
+  private final List<String> fixedEntries = new ArrayList<>();
+  private final List<String> fixedExits = new ArrayList<>();
+
+  TripSampler(RoadNetwork network, String vehicleClass, double minX, double minY, double maxX, double maxY, Random random) {
+    this.vehicleClass = vehicleClass;
+    this.random = random;
+    this.minX = minX;
+    this.minY = minY;
+    this.maxX = maxX;
+    this.maxY = maxY;
+
+    // the hub with the largest strongly connected neighbourhood among a few sampled edges
+    Reachability reachability = Reachability.fromNetwork(network, vehicleClass);
+    this.allowedEdges = network.edgesAllowing(vehicleClass);
+    Set<String> bestOrigins = Set.of();
+    Set<String> bestDestinations = Set.of();
+    int bestCore = -1;
+    for (int i = 0; i < HUB_CANDIDATES; i++) {
+      String hub = allowedEdges.get(random.nextInt(allowedEdges.size()));
+      Set<String> reaching = reachability.reaching(hub);
+      Set<String> reachable = reachability.reachableFrom(hub);
+      int core = (int) reaching.stream().filter(reachable::contains).count();
+      if (core > bestCore) {
+        bestCore = core;
+        bestOrigins = reaching;
+        bestDestinations = reachable;
+      }
+    }
+    this.origins = bestOrigins;
+    this.destinations = bestDestinations;
+    for (String edge : CACHED_ENTRY_POSITIONS) {
+      if (origins.contains(edge)) {
+        fixedEntries.add(edge);
+      }
+    }
+    for (String edge : CACHED_EXIT_POSITIONS) {
+      if (destinations.contains(edge)) {
+        fixedExits.add(edge);
+      }
+    }
+  }
+
+  // bounded by the junctions, close to the boundary sumo reports for the network
+  static TripSampler withinNetwork(RoadNetwork network, String vehicleClass, Random random) {
+    double minX = Double.MAX_VALUE, minY = Double.MAX_VALUE, maxX = -Double.MAX_VALUE, maxY = -Double.MAX_VALUE;
+    for (int junction = 0; junction < network.junctionCount(); junction++) {
+      minX = Math.min(minX, network.junctionX(junction));
+      minY = Math.min(minY, network.junctionY(junction));
+      maxX = Math.max(maxX, network.junctionX(junction));
+      maxY = Math.max(maxY, network.junctionY(junction));
+    }
+    return new TripSampler(network, vehicleClass, minX, minY, maxX, maxY, random);
+  }
+
+  int originCount() {
+    return origins.size();
+  }
+
+  int destinationCount() {
+    return destinations.size();
+  }
+
+  String[] randomTrip() {
+    for (int attempts = 0; attempts < 100; attempts++) {
+      String from = uniformBelow(FIXED_ENTRY_EDGE_PROBABILITY.apply(vehicleClass)) && !fixedEntries.isEmpty()
+          ? fixedEntries.get(random.nextInt(fixedEntries.size())) : randomEdge();
+      String to = uniformBelow(FIXED_EXIT_EDGE_PROBABILITY.apply(vehicleClass)) && !fixedExits.isEmpty()
+          ? fixedExits.get(random.nextInt(fixedExits.size())) : randomEdge();
+      if (!from.equals(to) && origins.contains(from) && destinations.contains(to)) {
+        return new String[]{from, to};
+      }
+    }
+    throw new IllegalStateException("Could not generate a " + vehicleClass + " trip");
+  }
+
+  private boolean uniformBelow(double probability) {
+    return random.nextDouble() < probability;
+  }
+
+  // points the lane index cannot snap, or all points if it could not be loaded, are replaced by a uniform allowed edge
+  private String randomEdge() {
+    double x = minX + random.nextDouble() * (maxX - minX);
+    double y = minY + random.nextDouble() * (maxY - minY);
+    RoadPosition position = EdgeSnapper.snapCartesianInProcess(x, y, vehicleClass);
+    return position != null ? position.edgeId() : allowedEdges.get(random.nextInt(allowedEdges.size()));
+  }
+}
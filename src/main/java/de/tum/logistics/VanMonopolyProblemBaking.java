@@ -1,15 +1,19 @@
 package de.tum.logistics;
 
 import java.io.File;
+import java.io.UncheckedIOException;
 import java.util.List;
 
 import org.eclipse.sumo.libtraci.Simulation;
 import org.eclipse.sumo.libtraci.StringVector;
 
 import de.tum.logistics.osm.DepotNode;
-import de.tum.logistics.osm.GeoJsonParser;
+import de.tum.logistics.problems.GraphBasedRoutingCost;
 import de.tum.logistics.problems.MicroHubDeliveryProblem;
-import me.tongfei.progressbar.ProgressBar;
+import de.tum.logistics.problems.serialization.RouteXmlReader;
+import de.tum.logistics.routing.EdgeSnapper;
+import de.tum.logistics.routing.NetworkCache;
+import de.tum.logistics.routing.RoadNetwork;
 
 import org.eclipse.sumo.libtraci.VehicleType;
 
@@ -21,26 +25,32 @@ public class VanMonopolyProblemBaking {
     Simulation.start(new StringVector(new String[]{"sumo", "-W", "-n", netFile.getAbsolutePath()}));
     VehicleType.copy("DEFAULT_BIKETYPE", "bicycle");
     VehicleType.copy("DEFAULT_VEHTYPE", "passenger");
-
-    List<DepotNode> depotNodes = GeoJsonParser.parseDepotNodes(new File(VanSimulation.RESOURCE_FOLDER, "depots.json"));
-    ProgressBar routableCheck = new ProgressBar("Checking routability of depot addresses", depotNodes.stream().mapToInt(d -> d.nodes().size()).sum());
-    depotNodes = depotNodes.stream()
-      .map(d -> {
-        DepotNode mapped = d.withoutUnroutableNodes("bicycle");
-        routableCheck.stepBy(d.nodes().size());
-        return mapped;
-      })
-      .filter(d -> !d.nodes().isEmpty())
-      .toList();
-    routableCheck.close();
-    System.out.println(depotNodes.stream().mapToInt(d -> d.nodes().size()).sum() + " addresses are routable by bike.");
+    NetworkCache networkCache = NetworkCache.open(netFile, "bicycle", new File(BikeHubSimulation.RESOURCE_FOLDER, "bicycle.cache"));
+    EdgeSnapper.load(netFile);
+    RoadNetwork network;
+    try {
+      network = RoadNetwork.load(netFile);
+    } catch (UncheckedIOException | IllegalStateException e) {
+      e.printStackTrace();
+      Simulation.close("Could not load the road network");
+      System.exit(1);
+      return;
+    }
+
+    List<DepotNode> depotNodes = BikeHubProblemBaking.loadRoutableDepots(networkCache, network);
+
+    GraphBasedRoutingCost routingCost = new GraphBasedRoutingCost("bicycle",
+        GraphBasedRoutingCost.Backend.CONTRACTION_HIERARCHY, new File(VanSimulation.RESOURCE_FOLDER, "bicycle.ch"));
+    routingCost.setup(network);
 
     MicroHubDeliveryProblem problem = new MicroHubDeliveryProblem();
-    problem.init(15000, depotNodes);
+    problem.init(15000, depotNodes, routingCost);
+    problem.setInitialRoutes(RouteXmlReader.read(new File(VanSimulation.RESOURCE_FOLDER, "routes_bikes.xml")));
     problem.solve();
     problem.writeRouteXML(new File(VanSimulation.RESOURCE_FOLDER, "routes_bikes.xml"), "monopoly", "#FFFF00");
     problem.plotSolution(VanSimulation.RESOURCE_FOLDER);
 
+    NetworkCache.saveAll();
     Simulation.close("Done!");
     System.exit(0);
   }
@@ -1,16 +1,24 @@
 package de.tum.logistics;
 
 import java.io.File;
-import java.util.HashSet;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Set;
 
-import me.tongfei.progressbar.ProgressBar;
 import org.eclipse.sumo.libtraci.Simulation;
 import org.eclipse.sumo.libtraci.StringVector;
 
+import de.tum.logistics.osm.AddressSnapshot;
 import de.tum.logistics.osm.GeoJsonParser;
 import de.tum.logistics.osm.OsmNode;
+import de.tum.logistics.problems.GraphBasedRoutingCost;
 import de.tum.logistics.problems.TruckDeliveryProblem;
+import de.tum.logistics.problems.serialization.RouteXmlReader;
+import de.tum.logistics.routing.EdgeSnapper;
+import de.tum.logistics.routing.NetworkCache;
+import de.tum.logistics.routing.Reachability;
+import de.tum.logistics.routing.RoadNetwork;
 import org.eclipse.sumo.libtraci.VehicleType;
 
 public class VanProblemBaking {
@@ -19,42 +27,86 @@ public class VanProblemBaking {
     File netFile = new File(VanSimulation.RESOURCE_FOLDER, "osm.net.xml.gz");
     Simulation.start(new StringVector(new String[]{"sumo", "-W", "-n", netFile.getAbsolutePath()}));
     VehicleType.copy("DEFAULT_VEHTYPE", "passenger");
+    NetworkCache networkCache = NetworkCache.open(netFile, "passenger", new File(VanSimulation.RESOURCE_FOLDER, "passenger.cache"));
+    EdgeSnapper.load(netFile);
+    RoadNetwork network;
+    try {
+      network = RoadNetwork.load(netFile);
+    } catch (UncheckedIOException | IllegalStateException e) {
+      e.printStackTrace();
+      Simulation.close("Could not load the road network");
+      System.exit(1);
+      return;
+    }
 
-    List<OsmNode> possibleLocations = GeoJsonParser.parseOsmNodes(new File(VanSimulation.RESOURCE_FOLDER, "addresses.json"));
+    List<OsmNode> possibleLocations = loadRoutableLocations(networkCache, network);
 
-    for (OsmNode node : ProgressBar.wrap(new HashSet<>(possibleLocations),"Filtering unroutable OSM locations")) {
-      if (!node.canBeReachedBy(TruckDeliveryProblem.ENTRY_EDGE,"passenger")) {
-        possibleLocations.remove(node);
-      }
-      if (!node.canRouteTo(TruckDeliveryProblem.EXIT_EDGE,"passenger")) {
-        possibleLocations.remove(node);
-      }
-    }
+    GraphBasedRoutingCost routingCost = new GraphBasedRoutingCost("passenger",
+        GraphBasedRoutingCost.Backend.CONTRACTION_HIERARCHY, new File(VanSimulation.RESOURCE_FOLDER, "passenger.ch"));
+    routingCost.setup(network);
 
     String emissionClass = "LCV_diesel_N1-III_Euro-6d";
     {
       TruckDeliveryProblem problem = new TruckDeliveryProblem();
-      problem.init(possibleLocations, (int) (15000*0.6));
+      problem.init(possibleLocations, (int) (15000*0.6), routingCost);
+      problem.setInitialRoutes(RouteXmlReader.read(new File(VanSimulation.RESOURCE_FOLDER, "routes_dhl.xml")));
       problem.solve();
       problem.writeRouteXML(new File(VanSimulation.RESOURCE_FOLDER, "routes_dhl.xml"), "dhl", "#FFFF00", emissionClass);
       problem.plotSolution(new File(VanSimulation.RESOURCE_FOLDER, "solution_dhl.png"));
     }
     {
       TruckDeliveryProblem problem = new TruckDeliveryProblem();
-      problem.init(possibleLocations, (int) (15000*0.25));
+      problem.init(possibleLocations, (int) (15000*0.25), routingCost);
+      problem.setInitialRoutes(RouteXmlReader.read(new File(VanSimulation.RESOURCE_FOLDER, "routes_ups.xml")));
       problem.solve();
       problem.writeRouteXML(new File(VanSimulation.RESOURCE_FOLDER, "routes_ups.xml"), "ups", "#704300", emissionClass);
       problem.plotSolution(new File(VanSimulation.RESOURCE_FOLDER, "solution_ups.png"));
     }
     {
       TruckDeliveryProblem problem = new TruckDeliveryProblem();
-      problem.init(possibleLocations, (int) (15000*0.15));
+      problem.init(possibleLocations, (int) (15000*0.15), routingCost);
+      problem.setInitialRoutes(RouteXmlReader.read(new File(VanSimulation.RESOURCE_FOLDER, "routes_dpd.xml")));
       problem.solve();
       problem.writeRouteXML(new File(VanSimulation.RESOURCE_FOLDER, "routes_dpd.xml"), "dpd", "#FF0000", emissionClass);
       problem.plotSolution(new File(VanSimulation.RESOURCE_FOLDER, "solution_dpd.png"));
     }
 
+    NetworkCache.saveAll();
     Simulation.close("Done!");
     System.exit(0);
   }
+
+  // routable addresses from the snapshot of an earlier run, filtered and snapshotted again if network or addresses changed
+  static List<OsmNode> loadRoutableLocations(NetworkCache networkCache, RoadNetwork network) {
+    File addressFile = new File(VanSimulation.RESOURCE_FOLDER, "addresses.json");
+    File snapshotFile = new File(VanSimulation.RESOURCE_FOLDER, "addresses_passenger.snapshot");
+    byte[] sourceHash = AddressSnapshot.sourceHash(networkCache, addressFile);
+    AddressSnapshot snapshot = AddressSnapshot.open(snapshotFile, sourceHash);
+    if (snapshot != null) {
+      snapshot.seed(OsmNode.snapCache());
+      return snapshot.addresses();
+    }
+    List<OsmNode> locations = routableLocations(network, GeoJsonParser.parseOsmNodes(addressFile));
+    AddressSnapshot.writeAddresses(snapshotFile, sourceHash, "passenger", locations);
+    return locations;
+  }
+
+  // addresses whose snapped edge can be reached from the entry and can reach the exit
+  static List<OsmNode> routableLocations(RoadNetwork network, List<OsmNode> possibleLocations) {
+    // one forward search from the entry and one backward search from the exit instead of two findRoute calls per address
+    Reachability reachability = Reachability.fromNetwork(network, "passenger");
+    Set<String> reachableFromEntry = reachability.reachableFrom(TruckDeliveryProblem.ENTRY_EDGE);
+    Set<String> reachingExit = reachability.reaching(TruckDeliveryProblem.EXIT_EDGE);
+    // snapping stays on this thread: libtraci keeps the active connection in process-global state, so additional
+    // sumo instances would only take turns on it instead of answering in parallel
+    List<OsmNode> routableLocations = new ArrayList<>();
+    for (OsmNode location : possibleLocations) {
+      String edge = location.searchNextRoadEdgeFor("passenger");
+      if (reachableFromEntry.contains(edge) && reachingExit.contains(edge)) {
+        routableLocations.add(location);
+      }
+    }
+    System.out.println("Snap cache: " + OsmNode.snapCache());
+    return routableLocations;
+  }
 }
@@ -0,0 +1,232 @@
+package de.tum.logistics.metrics;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+// Delivery KPIs per carrier plus the step loop timing, fed from the VehicleObserver once per step. Counters are
+// LongAdders, so rows can be exported on a separate writer thread while the step loop keeps recording. Rows go to a
+// CSV file or, for files ending in .jsonl, to JSON lines, one row per carrier and export interval.
+public final class DeliveryMetrics implements AutoCloseable {
+  private static final String[] COLUMNS = {"time", "carrier", "active_vehicles", "finished_vehicles", "stops_completed",
+      "dwell_mean_s", "dwell_p50_s", "dwell_p90_s", "distance_km", "co2_kg",
+      "cars_active", "cars_expected", "bikes_active", "bikes_expected", "traci_ms", "java_ms"};
+
+  private static final class CarrierMetrics {
+    final LongAdder departed = new LongAdder();
+    final LongAdder finished = new LongAdder();
+    final LongAdder stopsCompleted = new LongAdder();
+    final Histogram dwellSeconds = new Histogram(10, 1.5, 3600);
+    final DoubleAdder distanceMeters = new DoubleAdder();
+    final DoubleAdder co2Milligrams = new DoubleAdder();
+  }
+
+  private final Map<String, CarrierMetrics> carriers = new ConcurrentHashMap<>();
+  private final Map<String, Double> stopStarts = new HashMap<>();
+  private final LongAdder traciNanos = new LongAdder();
+  private final LongAdder javaNanos = new LongAdder();
+  private final File sink;
+  private final boolean jsonLines;
+  private final int exportInterval;
+  private final ExecutorService writer;
+  private double nextExport;
+  private boolean headerWritten;
+
+  // no rows are written without a sink, the counters are still kept for the final summary
+  public DeliveryMetrics(File sink, int exportInterval, double begin) {
+    this.sink = sink;
+    this.jsonLines = sink != null && sink.getName().endsWith(".jsonl");
+    this.exportInterval = exportInterval;
+    this.writer = sink != null ? Executors.newSingleThreadExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "MetricsWriter");
+      thread.setDaemon(true);
+      return thread;
+    }) : null;
+    this.nextExport = begin + exportInterval;
+    if (sink != null && sink.getParentFile() != null) {
+      sink.getParentFile().mkdirs();
+    }
+  }
+
+  // delivery vehicle ids are delivery_<carrier>_<n>, see writeRouteXML
+  static String carrierOf(String vehicleId) {
+    int first = vehicleId.indexOf('_');
+    int last = vehicleId.lastIndexOf('_');
+    return first >= 0 && last > first ? vehicleId.substring(first + 1, last) : vehicleId;
+  }
+
+  private CarrierMetrics carrier(String vehicleId) {
+    return carriers.computeIfAbsent(carrierOf(vehicleId), carrier -> new CarrierMetrics());
+  }
+
+  public void update(VehicleObserver observer, double seconds) {
+    for (String vehicleId : observer.departedIds()) {
+      if (observer.slot(vehicleId) >= 0) {
+        carrier(vehicleId).departed.increment();
+      }
+    }
+    for (String vehicleId : observer.stopStartingIds()) {
+      if (observer.slot(vehicleId) >= 0) {
+        stopStarts.put(vehicleId, seconds);
+      }
+    }
+    for (String vehicleId : observer.stopEndingIds()) {
+      Double start = stopStarts.remove(vehicleId);
+      if (start != null) {
+        CarrierMetrics metrics = carrier(vehicleId);
+        metrics.stopsCompleted.increment();
+        metrics.dwellSeconds.record(seconds - start);
+      }
+    }
+    // arrived vehicles keep their slot for this step
+    for (String vehicleId : observer.arrivedIds()) {
+      int slot = observer.slot(vehicleId);
+      if (slot >= 0) {
+        CarrierMetrics metrics = carrier(vehicleId);
+        metrics.finished.increment();
+        metrics.distanceMeters.add(observer.distance(slot));
+        metrics.co2Milligrams.add(observer.co2(slot));
+        stopStarts.remove(vehicleId);
+      }
+    }
+  }
+
+  // the part of a step's wall time spent waiting for sumo, everything else counts as Java time
+  public void recordStep(long traci, long total) {
+    traciNanos.add(traci);
+    javaNanos.add(total - traci);
+  }
+
+  public void maybeExport(VehicleObserver observer, double seconds, long carsExpected, long bikesExpected) {
+    if (seconds >= nextExport) {
+      nextExport += exportInterval;
+      export(observer, seconds, carsExpected, bikesExpected);
+    }
+  }
+
+  // a row per carrier, written on the writer thread
+  public void export(VehicleObserver observer, double seconds, long carsExpected, long bikesExpected) {
+    if (writer == null) {
+      return;
+    }
+    List<Object[]> rows = snapshot(observer, seconds, carsExpected, bikesExpected);
+    writer.submit(() -> write(rows));
+  }
+
+  private List<Object[]> snapshot(VehicleObserver observer, double seconds, long carsExpected, long bikesExpected) {
+    // distance and emissions of vehicles still on the road count towards their carrier as well. Vehicles that
+    // arrived this step still have a slot, but their totals are already part of finished
+    Set<String> arrived = new HashSet<>();
+    for (String vehicleId : observer.arrivedIds()) {
+      arrived.add(vehicleId);
+    }
+    Map<String, double[]> onRoad = new HashMap<>();
+    for (int slot = 0; slot < observer.observedCount(); slot++) {
+      String vehicleId = observer.observedId(slot);
+      if (arrived.contains(vehicleId)) {
+        continue;
+      }
+      double[] values = onRoad.computeIfAbsent(carrierOf(vehicleId), carrier -> new double[2]);
+      values[0] += observer.distance(slot);
+      values[1] += observer.co2(slot);
+    }
+    List<Object[]> rows = new ArrayList<>();
+    for (Map.Entry<String, CarrierMetrics> entry : carriers.entrySet()) {
+      CarrierMetrics metrics = entry.getValue();
+      double[] live = onRoad.getOrDefault(entry.getKey(), new double[2]);
+      rows.add(new Object[]{seconds, entry.getKey(),
+          metrics.departed.sum() - metrics.finished.sum(), metrics.finished.sum(), metrics.stopsCompleted.sum(),
+          metrics.dwellSeconds.mean(), metrics.dwellSeconds.percentile(0.5), metrics.dwellSeconds.percentile(0.9),
+          (metrics.distanceMeters.sum() + live[0]) / 1000, (metrics.co2Milligrams.sum() + live[1]) / 1e6,
+          observer.active("passenger_generated"), carsExpected, observer.active("bicycle_generated"), bikesExpected,
+          traciNanos.sum() / 1_000_000, javaNanos.sum() / 1_000_000});
+    }
+    return rows;
+  }
+
+  private void write(List<Object[]> rows) {
+    try (BufferedWriter out = new BufferedWriter(new FileWriter(sink, headerWritten))) {
+      if (!headerWritten && !jsonLines) {
+        out.write(String.join(",", COLUMNS));
+        out.newLine();
+      }
+      headerWritten = true;
+      for (Object[] row : rows) {
+        out.write(jsonLines ? jsonLine(row) : csvLine(row));
+        out.newLine();
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  private static String csvLine(Object[] row) {
+    List<String> values = new ArrayList<>();
+    for (Object value : row) {
+      values.add(format(value));
+    }
+    return String.join(",", values);
+  }
+
+  private static String jsonLine(Object[] row) {
+    StringBuilder line = new StringBuilder("{");
+    for (int i = 0; i < row.length; i++) {
+      if (i > 0) {
+        line.append(',');
+      }
+      line.append('"').append(COLUMNS[i]).append("\":");
+      if (row[i] instanceof String text) {
+        line.append('"').append(text).append('"');
+      } else if (row[i] instanceof Double value && !Double.isFinite(value)) {
+        line.append("null");
+      } else {
+        line.append(format(row[i]));
+      }
+    }
+    return line.append('}').toString();
+  }
+
+  private static String format(Object value) {
+    return value instanceof Double number ? String.format(Locale.ROOT, "%.3f", number) : String.valueOf(value);
+  }
+
+  public void printSummary() {
+    for (Map.Entry<String, CarrierMetrics> entry : carriers.entrySet()) {
+      CarrierMetrics metrics = entry.getValue();
+      System.out.printf(Locale.ROOT, "%s: %d vehicles finished, %d stops, mean dwell %.0f s, %.1f km, %.1f kg CO2%n",
+          entry.getKey(), metrics.finished.sum(), metrics.stopsCompleted.sum(), metrics.dwellSeconds.mean(),
+          metrics.distanceMeters.sum() / 1000, metrics.co2Milligrams.sum() / 1e6);
+    }
+    long traci = traciNanos.sum();
+    long java = javaNanos.sum();
+    System.out.printf(Locale.ROOT, "Step loop: %.1f s in TraCI, %.1f s in Java (%.0f%% TraCI)%n",
+        traci / 1e9, java / 1e9, 100.0 * traci / Math.max(1, traci + java));
+  }
+
+  @Override
+  public void close() {
+    if (writer == null) {
+      return;
+    }
+    writer.shutdown();
+    try {
+      writer.awaitTermination(10, TimeUnit.SECONDS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+  }
+}
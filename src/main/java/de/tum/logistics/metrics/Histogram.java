@@ -0,0 +1,72 @@
+package de.tum.logistics.metrics;
+
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+// Fixed exponential buckets with striped counters, cheap to record into from any thread. Percentiles are reported as
+// the upper bound of the bucket they fall into.
+public final class Histogram {
+  private final double[] upperBounds;
+  private final LongAdder[] counts;
+  private final LongAdder count = new LongAdder();
+  private final DoubleAdder sum = new DoubleAdder();
+
+  // buckets first, first * factor, ... up to at least max, plus one for everything above
+  public Histogram(double first, double factor, double max) {
+    int buckets = 1;
+    for (double bound = first; bound < max; bound *= factor) {
+      buckets++;
+    }
+    upperBounds = new double[buckets];
+    counts = new LongAdder[buckets + 1];
+    double bound = first;
+    for (int i = 0; i < buckets; i++) {
+      upperBounds[i] = bound;
+      bound *= factor;
+    }
+    for (int i = 0; i < counts.length; i++) {
+      counts[i] = new LongAdder();
+    }
+  }
+
+  public void record(double value) {
+    int low = 0;
+    int high = upperBounds.length;
+    while (low < high) {
+      int middle = (low + high) >>> 1;
+      if (upperBounds[middle] < value) {
+        low = middle + 1;
+      } else {
+        high = middle;
+      }
+    }
+    counts[low].increment();
+    count.increment();
+    sum.add(value);
+  }
+
+  public long count() {
+    return count.sum();
+  }
+
+  public double mean() {
+    long n = count.sum();
+    return n == 0 ? Double.NaN : sum.sum() / n;
+  }
+
+  public double percentile(double p) {
+    long n = count.sum();
+    if (n == 0) {
+      return Double.NaN;
+    }
+    long rank = (long) Math.ceil(p * n);
+    long seen = 0;
+    for (int i = 0; i < upperBounds.length; i++) {
+      seen += counts[i].sum();
+      if (seen >= rank) {
+        return upperBounds[i];
+      }
+    }
+    return Double.POSITIVE_INFINITY;
+  }
+}
@@ -0,0 +1,252 @@
+package de.tum.logistics.metrics;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import org.eclipse.sumo.libtraci.IntVector;
+import org.eclipse.sumo.libtraci.Simulation;
+import org.eclipse.sumo.libtraci.StringVector;
+import org.eclipse.sumo.libtraci.SubscriptionResults;
+import org.eclipse.sumo.libtraci.TraCIDouble;
+import org.eclipse.sumo.libtraci.TraCIPosition;
+import org.eclipse.sumo.libtraci.TraCIResult;
+import org.eclipse.sumo.libtraci.TraCIResults;
+import org.eclipse.sumo.libtraci.TraCIStringList;
+import org.eclipse.sumo.libtraci.Vehicle;
+import org.eclipse.sumo.libtraci.libtraci;
+
+// Observes the simulation through TraCI subscriptions, whose results arrive with the response to Simulation.step.
+// Departed and arrived vehicles are counted per category, detailed vehicles (e.g. delivery vans) additionally get a
+// variable subscription whose values are copied into primitive arrays every step. Apart from one subscribe call per
+// detailed departure this needs no round-trips besides the step itself, however many vehicles are observed.
+public final class VehicleObserver {
+  private static final int[] SIMULATION_VARIABLES = {
+      libtraci.VAR_DEPARTED_VEHICLES_IDS, libtraci.VAR_ARRIVED_VEHICLES_IDS,
+      libtraci.VAR_STOP_STARTING_VEHICLES_IDS, libtraci.VAR_STOP_ENDING_VEHICLES_IDS};
+  private static final int[] VEHICLE_VARIABLES = {
+      libtraci.VAR_SPEED, libtraci.VAR_POSITION, libtraci.VAR_DISTANCE, libtraci.VAR_CO2EMISSION};
+
+  private final List<String> categories;
+  private final Map<String, Integer> categoryIndices = new HashMap<>();
+  private final Function<String, String> categoryOfVehicle;
+  private final Predicate<String> detailed;
+  private final double stepLength;
+  private final long[] added;
+  private final long[] departed;
+  private final long[] arrived;
+
+  private StringVector lastDeparted = new StringVector();
+  private StringVector lastArrived = new StringVector();
+  private StringVector lastStopStarting = new StringVector();
+  private StringVector lastStopEnding = new StringVector();
+
+  // detailed vehicles occupy the slots 0..observedCount-1, arrivals move the last slot into the freed one
+  private final Map<String, Integer> slots = new HashMap<>();
+  private String[] observedIds = new String[64];
+  private double[] speed = new double[64];
+  private double[] x = new double[64];
+  private double[] y = new double[64];
+  private double[] distance = new double[64];
+  private double[] co2Rate = new double[64];
+  private double[] co2Total = new double[64];
+  private int observedCount = 0;
+
+  public VehicleObserver(List<String> categories, Function<String, String> categoryOfVehicle,
+                         Predicate<String> detailed, double stepLength) {
+    this.categories = List.copyOf(categories);
+    for (int i = 0; i < categories.size(); i++) {
+      categoryIndices.put(categories.get(i), i);
+    }
+    this.categoryOfVehicle = categoryOfVehicle;
+    this.detailed = detailed;
+    this.stepLength = stepLength;
+    this.added = new long[categories.size()];
+    this.departed = new long[categories.size()];
+    this.arrived = new long[categories.size()];
+    Simulation.subscribe(new IntVector(SIMULATION_VARIABLES));
+  }
+
+  // vehicles added over TraCI count as active before they are inserted, so the step loop does not add them twice
+  public void added(String category) {
+    added[categoryIndices.get(category)]++;
+  }
+
+  public void update() {
+    // arrivals of the previous step keep their slot until now, so that they can still be read after that step
+    removeArrived();
+    TraCIResults results = Simulation.getSubscriptionResults();
+    lastDeparted = stringList(results.get(libtraci.VAR_DEPARTED_VEHICLES_IDS));
+    lastArrived = stringList(results.get(libtraci.VAR_ARRIVED_VEHICLES_IDS));
+    lastStopStarting = stringList(results.get(libtraci.VAR_STOP_STARTING_VEHICLES_IDS));
+    lastStopEnding = stringList(results.get(libtraci.VAR_STOP_ENDING_VEHICLES_IDS));
+    results.delete();
+
+    for (String vehicleId : lastDeparted) {
+      Integer category = categoryIndices.get(categoryOfVehicle.apply(vehicleId));
+      if (category != null) {
+        departed[category]++;
+      }
+      if (detailed.test(vehicleId)) {
+        Vehicle.subscribe(vehicleId, new IntVector(VEHICLE_VARIABLES));
+        addSlot(vehicleId);
+      }
+    }
+    for (String vehicleId : lastArrived) {
+      Integer category = categoryIndices.get(categoryOfVehicle.apply(vehicleId));
+      if (category != null) {
+        arrived[category]++;
+      }
+    }
+
+    if (observedCount > 0) {
+      SubscriptionResults vehicleResults = Vehicle.getAllSubscriptionResults();
+      for (Map.Entry<String, TraCIResults> entry : vehicleResults.entrySet()) {
+        Integer slot = slots.get(entry.getKey());
+        if (slot == null) {
+          continue;
+        }
+        TraCIResults values = entry.getValue();
+        speed[slot] = number(values.get(libtraci.VAR_SPEED));
+        double[] position = position(values.get(libtraci.VAR_POSITION));
+        x[slot] = position[0];
+        y[slot] = position[1];
+        distance[slot] = number(values.get(libtraci.VAR_DISTANCE));
+        co2Rate[slot] = number(values.get(libtraci.VAR_CO2EMISSION));
+        co2Total[slot] += co2Rate[slot] * stepLength;
+      }
+      vehicleResults.delete();
+    }
+  }
+
+  private void removeArrived() {
+    for (String vehicleId : lastArrived) {
+      Integer slot = slots.remove(vehicleId);
+      if (slot != null) {
+        int last = --observedCount;
+        if (slot != last) {
+          moveSlot(last, slot);
+        }
+        observedIds[last] = null;
+      }
+    }
+  }
+
+  private void addSlot(String vehicleId) {
+    if (observedCount == observedIds.length) {
+      int capacity = observedCount * 2;
+      observedIds = Arrays.copyOf(observedIds, capacity);
+      speed = Arrays.copyOf(speed, capacity);
+      x = Arrays.copyOf(x, capacity);
+      y = Arrays.copyOf(y, capacity);
+      distance = Arrays.copyOf(distance, capacity);
+      co2Rate = Arrays.copyOf(co2Rate, capacity);
+      co2Total = Arrays.copyOf(co2Total, capacity);
+    }
+    int slot = observedCount++;
+    observedIds[slot] = vehicleId;
+    speed[slot] = x[slot] = y[slot] = distance[slot] = co2Rate[slot] = co2Total[slot] = 0;
+    slots.put(vehicleId, slot);
+  }
+
+  private void moveSlot(int from, int to) {
+    observedIds[to] = observedIds[from];
+    speed[to] = speed[from];
+    x[to] = x[from];
+    y[to] = y[from];
+    distance[to] = distance[from];
+    co2Rate[to] = co2Rate[from];
+    co2Total[to] = co2Total[from];
+    slots.put(observedIds[to], to);
+  }
+
+  public List<String> categories() {
+    return categories;
+  }
+
+  public long active(String category) {
+    int index = categoryIndices.get(category);
+    return Math.max(added[index], departed[index]) - arrived[index];
+  }
+
+  public StringVector departedIds() {
+    return lastDeparted;
+  }
+
+  public StringVector arrivedIds() {
+    return lastArrived;
+  }
+
+  public StringVector stopStartingIds() {
+    return lastStopStarting;
+  }
+
+  public StringVector stopEndingIds() {
+    return lastStopEnding;
+  }
+
+  public int observedCount() {
+    return observedCount;
+  }
+
+  // -1 for vehicles that are not observed in detail
+  public int slot(String vehicleId) {
+    return slots.getOrDefault(vehicleId, -1);
+  }
+
+  public String observedId(int slot) {
+    return observedIds[slot];
+  }
+
+  public double speed(int slot) {
+    return speed[slot];
+  }
+
+  public double x(int slot) {
+    return x[slot];
+  }
+
+  public double y(int slot) {
+    return y[slot];
+  }
+
+  // meters driven since departure
+  public double distance(int slot) {
+    return distance[slot];
+  }
+
+  // mg emitted since departure, integrated from the per step emission rate
+  public double co2(int slot) {
+    return co2Total[slot];
+  }
+
+  // libtraci hands out the concrete result classes, any other result means a variable was not subscribed as expected
+  private static double number(TraCIResult result) {
+    if (result instanceof TraCIDouble value) {
+      return value.getValue();
+    }
+    throw unexpectedResult(result, TraCIDouble.class);
+  }
+
+  private static double[] position(TraCIResult result) {
+    if (result instanceof TraCIPosition position) {
+      return new double[]{position.getX(), position.getY()};
+    }
+    throw unexpectedResult(result, TraCIPosition.class);
+  }
+
+  private static StringVector stringList(TraCIResult result) {
+    if (result instanceof TraCIStringList list) {
+      return list.getValue();
+    }
+    throw unexpectedResult(result, TraCIStringList.class);
+  }
+
+  private static IllegalStateException unexpectedResult(TraCIResult result, Class<? extends TraCIResult> expected) {
+    return new IllegalStateException("Expected a " + expected.getSimpleName() + " subscription result, got "
+        + (result == null ? "none" : result.getClass().getSimpleName() + " " + result.getString()));
+  }
+}
@@ -0,0 +1,285 @@
+package de.tum.logistics.osm;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.tum.logistics.routing.EdgeSnapper;
+import de.tum.logistics.routing.NetworkCache;
+import de.tum.logistics.routing.RoadPosition;
+import de.tum.logistics.routing.SnapCache;
+
+// Addresses that passed the routability filter of a baking run, with their snapped road position, so that the next
+// run can skip loading, snapping and filtering. The file is memory-mapped and records are read in place, only the
+// string tables are decoded on open. It is keyed by the network hash of the NetworkCache of the vehicle class and a
+// hash of the address file, and ignored if either changed.
+//
+// Layout: magic, version, hash, the counts of strings, edges, addresses and depots, the length prefixed UTF-8
+// vehicle class, strings and edge names, then fixed size address and depot records.
+public final class AddressSnapshot {
+  private static final int FILE_MAGIC = 0x4C4D4153;
+  private static final int FILE_VERSION = 2;
+  private static final int HASH_LENGTH = 32;
+  // longitude, latitude, position on edge, street, house number, post code, edge, lane
+  private static final int ADDRESS_RECORD_SIZE = 44;
+  // longitude, latitude, road position, edge, first address, end of addresses, padding
+  private static final int DEPOT_RECORD_SIZE = 40;
+  private static final int NONE = -1;
+
+  private final ByteBuffer mapped;
+  private final String vehicleClass;
+  private final String[] strings;
+  private final String[] edgeNames;
+  private final int addressOffset, addressCount;
+  private final int depotOffset, depotCount;
+  // created on first access and kept, like the nodes of an AddressTable
+  private final OsmNode[] nodes;
+
+  private AddressSnapshot(ByteBuffer mapped, String vehicleClass, String[] strings, String[] edgeNames,
+                          int addressOffset, int addressCount, int depotOffset, int depotCount) {
+    this.mapped = mapped;
+    this.vehicleClass = vehicleClass;
+    this.strings = strings;
+    this.edgeNames = edgeNames;
+    this.addressOffset = addressOffset;
+    this.addressCount = addressCount;
+    this.depotOffset = depotOffset;
+    this.depotCount = depotCount;
+    this.nodes = new OsmNode[addressCount];
+  }
+
+  // the network cache already hashed the net file and vehicle class when it was opened
+  public static byte[] sourceHash(NetworkCache networkCache, File addressFile) {
+    try (DigestInputStream in = new DigestInputStream(new BufferedInputStream(new FileInputStream(addressFile)),
+        MessageDigest.getInstance("SHA-256"))) {
+      in.transferTo(OutputStream.nullOutputStream());
+      MessageDigest digest = in.getMessageDigest();
+      digest.update(networkCache.networkHash());
+      return digest.digest();
+    } catch (IOException | NoSuchAlgorithmException e) {
+      throw new RuntimeException("Could not hash address file " + addressFile.getAbsolutePath(), e);
+    }
+  }
+
+  // null if there is no snapshot for this hash
+  public static AddressSnapshot open(File snapshotFile, byte[] sourceHash) {
+    if (!snapshotFile.exists()) {
+      return null;
+    }
+    try (FileChannel channel = FileChannel.open(snapshotFile.toPath(), StandardOpenOption.READ)) {
+      ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+      if (buffer.getInt(0) != FILE_MAGIC || buffer.getInt(4) != FILE_VERSION) {
+        System.out.println("Address snapshot at " + snapshotFile.getAbsolutePath() + " has another format, rebuilding");
+        return null;
+      }
+      byte[] storedHash = new byte[HASH_LENGTH];
+      buffer.get(8, storedHash);
+      if (!Arrays.equals(storedHash, sourceHash)) {
+        System.out.println("Address snapshot at " + snapshotFile.getAbsolutePath() + " is stale, rebuilding");
+        return null;
+      }
+      int position = 8 + HASH_LENGTH;
+      int stringCount = buffer.getInt(position);
+      int edgeCount = buffer.getInt(position + 4);
+      int addressCount = buffer.getInt(position + 8);
+      int depotCount = buffer.getInt(position + 12);
+      position += 16;
+      String[] vehicleClass = new String[1];
+      position = readStrings(buffer, position, vehicleClass);
+      String[] strings = new String[stringCount];
+      position = readStrings(buffer, position, strings);
+      String[] edgeNames = new String[edgeCount];
+      position = readStrings(buffer, position, edgeNames);
+      AddressSnapshot snapshot = new AddressSnapshot(buffer, vehicleClass[0], strings, edgeNames,
+          position, addressCount, position + addressCount * ADDRESS_RECORD_SIZE, depotCount);
+      System.out.println("Loaded " + addressCount + " routable addresses and " + depotCount + " depots from "
+          + snapshotFile.getAbsolutePath());
+      return snapshot;
+    } catch (IOException | RuntimeException e) {
+      System.out.println("Could not read address snapshot at " + snapshotFile.getAbsolutePath() + ": " + e.getMessage());
+      return null;
+    }
+  }
+
+  private static int readStrings(ByteBuffer buffer, int position, String[] target) {
+    for (int i = 0; i < target.length; i++) {
+      int length = buffer.getInt(position);
+      byte[] bytes = new byte[length];
+      buffer.get(position + 4, bytes);
+      target[i] = new String(bytes, StandardCharsets.UTF_8).intern();
+      position += 4 + length;
+    }
+    return position;
+  }
+
+  public static void writeAddresses(File snapshotFile, byte[] sourceHash, String vehicleClass, List<OsmNode> addresses) {
+    write(snapshotFile, sourceHash, vehicleClass, addresses, List.of());
+  }
+
+  // the addresses of the depots are stored consecutively, each depot references its range
+  public static void writeDepots(File snapshotFile, byte[] sourceHash, String vehicleClass, List<DepotNode> depots) {
+    write(snapshotFile, sourceHash, vehicleClass, depots.stream().flatMap(depot -> depot.nodes().stream()).toList(), depots);
+  }
+
+  private static void write(File snapshotFile, byte[] sourceHash, String vehicleClass, List<OsmNode> addresses,
+                            List<DepotNode> depots) {
+    double[] longitudes = new double[addresses.size()];
+    double[] latitudes = new double[addresses.size()];
+    for (int i = 0; i < addresses.size(); i++) {
+      longitudes[i] = addresses.get(i).longitude();
+      latitudes[i] = addresses.get(i).latitude();
+    }
+    RoadPosition[] positions = EdgeSnapper.snapAll(longitudes, latitudes, vehicleClass);
+
+    Map<String, Integer> strings = new LinkedHashMap<>();
+    Map<String, Integer> edges = new LinkedHashMap<>();
+    for (int i = 0; i < addresses.size(); i++) {
+      OsmNode address = addresses.get(i);
+      indexOf(strings, address.street());
+      indexOf(strings, address.houseNum());
+      indexOf(strings, address.postCode());
+      indexOf(edges, positions[i].edgeId());
+    }
+    for (DepotNode depot : depots) {
+      indexOf(edges, depot.edgeId());
+    }
+
+    File tempFile = new File(snapshotFile.getAbsolutePath() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile), 1 << 16))) {
+      out.writeInt(FILE_MAGIC);
+      out.writeInt(FILE_VERSION);
+      out.write(sourceHash);
+      out.writeInt(strings.size());
+      out.writeInt(edges.size());
+      out.writeInt(addresses.size());
+      out.writeInt(depots.size());
+      writeStrings(out, List.of(vehicleClass));
+      writeStrings(out, strings.keySet());
+      writeStrings(out, edges.keySet());
+      for (int i = 0; i < addresses.size(); i++) {
+        OsmNode address = addresses.get(i);
+        out.writeDouble(address.longitude());
+        out.writeDouble(address.latitude());
+        out.writeDouble(positions[i].pos());
+        out.writeInt(indexOf(strings, address.street()));
+        out.writeInt(indexOf(strings, address.houseNum()));
+        out.writeInt(indexOf(strings, address.postCode()));
+        out.writeInt(indexOf(edges, positions[i].edgeId()));
+        out.writeInt(positions[i].laneIndex());
+      }
+      int first = 0;
+      for (DepotNode depot : depots) {
+        out.writeDouble(depot.longitude());
+        out.writeDouble(depot.latitude());
+        out.writeDouble(depot.roadPosition());
+        out.writeInt(indexOf(edges, depot.edgeId()));
+        out.writeInt(first);
+        first += depot.nodes().size();
+        out.writeInt(first);
+        out.writeInt(0);
+      }
+    } catch (IOException e) {
+      e.printStackTrace();
+      return;
+    }
+    try {
+      Files.move(tempFile.toPath(), snapshotFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+      System.out.println("Saved " + addresses.size() + " routable addresses to " + snapshotFile.getAbsolutePath());
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+  }
+
+  private static int indexOf(Map<String, Integer> table, String value) {
+    return value == null ? NONE : table.computeIfAbsent(value, v -> table.size());
+  }
+
+  private static void writeStrings(DataOutputStream out, Iterable<String> values) throws IOException {
+    for (String value : values) {
+      byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+      out.writeInt(bytes.length);
+      out.write(bytes);
+    }
+  }
+
+  public int addressCount() {
+    return addressCount;
+  }
+
+  public double longitude(int index) {
+    return mapped.getDouble(address(index));
+  }
+
+  public double latitude(int index) {
+    return mapped.getDouble(address(index) + 8);
+  }
+
+  public RoadPosition position(int index) {
+    int record = address(index);
+    return new RoadPosition(edgeNames[mapped.getInt(record + 36)], mapped.getDouble(record + 16), mapped.getInt(record + 40));
+  }
+
+  // puts the stored road positions into the snap cache, so the addresses are not snapped again by the problems
+  public void seed(SnapCache snapCache) {
+    for (int i = 0; i < addressCount; i++) {
+      snapCache.put(longitude(i), latitude(i), vehicleClass, position(i));
+    }
+  }
+
+  public OsmNode node(int index) {
+    int record = address(index);
+    OsmNode node = nodes[index];
+    if (node == null) {
+      node = new OsmNode(mapped.getDouble(record + 8), mapped.getDouble(record), string(mapped.getInt(record + 24)),
+          string(mapped.getInt(record + 28)), string(mapped.getInt(record + 32)));
+      nodes[index] = node;
+    }
+    return node;
+  }
+
+  private int address(int index) {
+    if (index < 0 || index >= addressCount) {
+      throw new IndexOutOfBoundsException(index);
+    }
+    return addressOffset + index * ADDRESS_RECORD_SIZE;
+  }
+
+  private String string(int index) {
+    return index == NONE ? null : strings[index];
+  }
+
+  public List<OsmNode> addresses() {
+    return new NodeRange(this::node, 0, addressCount);
+  }
+
+  public List<DepotNode> depots() {
+    List<DepotNode> depots = new ArrayList<>(depotCount);
+    for (int i = 0; i < depotCount; i++) {
+      int record = depotOffset + i * DEPOT_RECORD_SIZE;
+      int edge = mapped.getInt(record + 24);
+      depots.add(new DepotNode(mapped.getDouble(record), mapped.getDouble(record + 8),
+          new NodeRange(this::node, mapped.getInt(record + 28), mapped.getInt(record + 32)),
+          edge == NONE ? null : edgeNames[edge], mapped.getDouble(record + 16)));
+    }
+    return depots;
+  }
+}
@@ -0,0 +1,179 @@
+package de.tum.logistics.osm;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+
+// Addresses of addresses.json and depots.json, streamed with a JsonReader into parallel arrays instead of one record
+// per address. Streets, house numbers and post codes repeat a lot and are interned per table. An OsmNode is created
+// the first time its element is accessed and kept, so callers drawing random addresses over and over do not
+// allocate. The nodes of a depot are a range of the table of its file.
+//
+// Depots do not index the table of addresses.json: no program loads both files, so a shared table would add a
+// second file to read for the depot bakers without saving memory in any process, and the depot file encodes
+// streets differently, so its nodes would change.
+public final class AddressTable {
+  private static final int INITIAL_CAPACITY = 1 << 12;
+
+  private final Map<String, String> interned = new HashMap<>();
+  private double[] longitudes = new double[INITIAL_CAPACITY];
+  private double[] latitudes = new double[INITIAL_CAPACITY];
+  private String[] streets = new String[INITIAL_CAPACITY];
+  private String[] houseNumbers = new String[INITIAL_CAPACITY];
+  private String[] postCodes = new String[INITIAL_CAPACITY];
+  private OsmNode[] nodes;
+  private int size;
+
+  private AddressTable() {
+  }
+
+  public static AddressTable load(File addressFile) throws IOException {
+    AddressTable table = new AddressTable();
+    try (JsonReader reader = open(addressFile)) {
+      reader.beginArray();
+      while (reader.hasNext()) {
+        table.readAddress(reader);
+      }
+      reader.endArray();
+    }
+    table.trim();
+    return table;
+  }
+
+  // the depots of the file, their nodes are consecutive addresses of one table
+  public static List<DepotNode> loadDepots(File depotFile) throws IOException {
+    AddressTable table = new AddressTable();
+    List<DepotNode> depots = new ArrayList<>();
+    try (JsonReader reader = open(depotFile)) {
+      reader.beginArray();
+      while (reader.hasNext()) {
+        double longitude = Double.NaN, latitude = Double.NaN, roadPosition = 0;
+        String edgeId = null;
+        int from = table.size;
+        reader.beginObject();
+        while (reader.hasNext()) {
+          String name = reader.nextName();
+          if (reader.peek() == JsonToken.NULL) {
+            reader.skipValue();
+            continue;
+          }
+          switch (name) {
+            case "longitude" -> longitude = reader.nextDouble();
+            case "latitude" -> latitude = reader.nextDouble();
+            case "edgeId" -> edgeId = reader.nextString();
+            case "roadPosition" -> roadPosition = reader.nextDouble();
+            case "nodes" -> {
+              from = table.size;
+              reader.beginArray();
+              while (reader.hasNext()) {
+                table.readAddress(reader);
+              }
+              reader.endArray();
+            }
+            default -> reader.skipValue();
+          }
+        }
+        reader.endObject();
+        depots.add(new DepotNode(longitude, latitude, table.range(from, table.size), edgeId, roadPosition));
+      }
+      reader.endArray();
+    }
+    table.trim();
+    return depots;
+  }
+
+  private static JsonReader open(File file) throws IOException {
+    return new JsonReader(new BufferedReader(
+        new InputStreamReader(new FileInputStream(file), StandardCharsets.UTF_8), 1 << 16));
+  }
+
+  private void readAddress(JsonReader reader) throws IOException {
+    if (size == longitudes.length) {
+      grow();
+    }
+    reader.beginObject();
+    while (reader.hasNext()) {
+      String name = reader.nextName();
+      if (reader.peek() == JsonToken.NULL) {
+        reader.skipValue();
+        continue;
+      }
+      switch (name) {
+        case "longitude" -> longitudes[size] = reader.nextDouble();
+        case "latitude" -> latitudes[size] = reader.nextDouble();
+        case "street" -> streets[size] = intern(reader.nextString());
+        case "houseNum" -> houseNumbers[size] = intern(reader.nextString());
+        case "postCode" -> postCodes[size] = intern(reader.nextString());
+        default -> reader.skipValue();
+      }
+    }
+    reader.endObject();
+    size++;
+  }
+
+  private String intern(String value) {
+    String existing = interned.putIfAbsent(value, value);
+    return existing != null ? existing : value;
+  }
+
+  private void grow() {
+    int capacity = longitudes.length * 2;
+    longitudes = Arrays.copyOf(longitudes, capacity);
+    latitudes = Arrays.copyOf(latitudes, capacity);
+    streets = Arrays.copyOf(streets, capacity);
+    houseNumbers = Arrays.copyOf(houseNumbers, capacity);
+    postCodes = Arrays.copyOf(postCodes, capacity);
+  }
+
+  private void trim() {
+    longitudes = Arrays.copyOf(longitudes, size);
+    latitudes = Arrays.copyOf(latitudes, size);
+    streets = Arrays.copyOf(streets, size);
+    houseNumbers = Arrays.copyOf(houseNumbers, size);
+    postCodes = Arrays.copyOf(postCodes, size);
+    nodes = new OsmNode[size];
+    interned.clear();
+  }
+
+  public int size() {
+    return size;
+  }
+
+  public double longitude(int index) {
+    return longitudes[index];
+  }
+
+  public double latitude(int index) {
+    return latitudes[index];
+  }
+
+  // threads racing on the first access create equal nodes, either one is kept
+  public OsmNode node(int index) {
+    OsmNode node = nodes[index];
+    if (node == null) {
+      node = new OsmNode(latitudes[index], longitudes[index], streets[index], houseNumbers[index], postCodes[index]);
+      nodes[index] = node;
+    }
+    return node;
+  }
+
+  public List<OsmNode> asList() {
+    return range(0, size);
+  }
+
+  // the ranges of loadDepots are taken before the arrays are trimmed, so elements are looked up through the table
+  public List<OsmNode> range(int from, int to) {
+    return new NodeRange(this::node, from, to);
+  }
+}
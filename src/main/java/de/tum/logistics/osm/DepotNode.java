@@ -1,9 +1,11 @@
 package de.tum.logistics.osm;
 
 import java.util.List;
+import java.util.Set;
 
-import org.eclipse.sumo.libtraci.Simulation;
-import org.eclipse.sumo.libtraci.TraCIRoadPosition;
+import de.tum.logistics.routing.EdgeSnapper;
+import de.tum.logistics.routing.Reachability;
+import de.tum.logistics.routing.RoadPosition;
 
 public record DepotNode(
     double longitude,
@@ -12,18 +14,21 @@ public record DepotNode(
     String edgeId,
     double roadPosition
 ) {
-    public DepotNode withoutUnroutableNodes(String vehicleType) {
+    // filters against a precomputed edge graph, a single forward search from the depot edge replaces one findRoute per node
+    public DepotNode withoutUnroutableNodes(String vehicleType, Reachability reachability) {
         if (edgeId == null) {
-            return this.withEdgeData(vehicleType).withoutUnroutableNodes(vehicleType);
+            return this.withEdgeData(vehicleType).withoutUnroutableNodes(vehicleType, reachability);
         }
+        // like the findRoute from the depot edge to the node it replaces, only nodes the depot can drive to are kept
+        Set<String> reachableFromDepot = reachability.reachableFrom(edgeId);
         return new DepotNode(longitude, latitude, nodes.stream()
-            .filter(node -> node.canBeReachedBy(edgeId, vehicleType))
+            .filter(node -> reachableFromDepot.contains(node.searchNextRoadEdgeFor(vehicleType)))
             .toList(), edgeId, roadPosition);
     }
 
     public DepotNode withEdgeData(String vehicleType) {
-        TraCIRoadPosition depotPosition = Simulation.convertRoad(longitude, latitude, true, vehicleType);
-        return new DepotNode(longitude, latitude, nodes, depotPosition.getEdgeID(), depotPosition.getPos());
+        RoadPosition depotPosition = EdgeSnapper.snap(longitude, latitude, vehicleType);
+        return new DepotNode(longitude, latitude, nodes, depotPosition.edgeId(), depotPosition.pos());
     }
 
 }
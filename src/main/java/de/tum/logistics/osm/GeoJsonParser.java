@@ -1,23 +1,17 @@
 package de.tum.logistics.osm;
 
 import java.io.File;
-import java.io.FileReader;
 import java.io.IOException;
-import java.lang.reflect.Type;
 import java.util.Collections;
 import java.util.List;
 
-import com.google.gson.Gson;
-import com.google.gson.reflect.TypeToken;
-
+// Both files are streamed into an AddressTable, the returned lists are views of it
 public class GeoJsonParser {
 
     public static List<OsmNode> parseOsmNodes(File geoJsonFile) {
-        Gson gson = new Gson();
-        try (FileReader reader = new FileReader(geoJsonFile)) {
-            Type nodeListType = new TypeToken<List<OsmNode>>() {}.getType();
-          return gson.fromJson(reader, nodeListType);
-        } catch (IOException e) {
+        try {
+            return AddressTable.load(geoJsonFile).asList();
+        } catch (IOException | RuntimeException e) {
             e.printStackTrace();
             System.exit(1);
             return Collections.emptyList();
@@ -26,11 +20,9 @@ public class GeoJsonParser {
     }
 
   public static List<DepotNode> parseDepotNodes(File geoJsonFile) {
-    Gson gson = new Gson();
-    try (FileReader reader = new FileReader(geoJsonFile)) {
-      Type nodeListType = new TypeToken<List<DepotNode>>() {}.getType();
-      return gson.fromJson(reader, nodeListType);
-    } catch (IOException e) {
+    try {
+      return AddressTable.loadDepots(geoJsonFile);
+    } catch (IOException | RuntimeException e) {
       e.printStackTrace();
       System.exit(1);
       return Collections.emptyList();
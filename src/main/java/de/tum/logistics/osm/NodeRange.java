@@ -0,0 +1,32 @@
+package de.tum.logistics.osm;
+
+import java.util.AbstractList;
+import java.util.RandomAccess;
+import java.util.function.IntFunction;
+
+// Read-only list of the nodes from (inclusive) to (exclusive) of an AddressTable or AddressSnapshot, which create
+// each node on first access
+final class NodeRange extends AbstractList<OsmNode> implements RandomAccess {
+  private final IntFunction<OsmNode> nodes;
+  private final int from;
+  private final int to;
+
+  NodeRange(IntFunction<OsmNode> nodes, int from, int to) {
+    this.nodes = nodes;
+    this.from = from;
+    this.to = to;
+  }
+
+  @Override
+  public OsmNode get(int index) {
+    if (index < 0 || index >= to - from) {
+      throw new IndexOutOfBoundsException(index);
+    }
+    return nodes.apply(from + index);
+  }
+
+  @Override
+  public int size() {
+    return to - from;
+  }
+}
@@ -1,11 +1,6 @@
 package de.tum.logistics.osm;
 
-import com.graphhopper.jsprit.core.util.Coordinate;
-import org.eclipse.sumo.libtraci.Simulation;
-import org.eclipse.sumo.libtraci.TraCIRoadPosition;
-
-import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
+import de.tum.logistics.routing.SnapCache;
 
 public record OsmNode(
   double latitude,
@@ -26,27 +21,14 @@ public record OsmNode(
     return distanceCoord * METERS_PER_DEGREE;
   }
 
-  public boolean canBeReachedBy(String edgeId, String vehicleType) {
-    return Simulation.findRoute(edgeId, searchNextRoadEdgeFor(vehicleType), vehicleType).getCost() > 0;
-  }
-
-  public boolean canRouteTo(String edgeId, String vehicleType) {
-    return Simulation.findRoute(searchNextRoadEdgeFor(vehicleType), edgeId, vehicleType).getCost() > 0;
-  }
+  // keyed by coordinates and vehicle class, -Dsnap.cache.size bounds the number of snaps kept
+  private final static SnapCache snapCache = new SnapCache(Integer.getInteger("snap.cache.size", 1 << 16));
 
-  private record RoadPosition(String edgeId, double pos, int laneIndex) {
-    public static RoadPosition from(TraCIRoadPosition roadPos) {
-      return new RoadPosition(roadPos.getEdgeID(), roadPos.getPos(), roadPos.getLaneIndex());
-    }
+  public static SnapCache snapCache() {
+    return snapCache;
   }
-  private final static Map<OsmNode, RoadPosition> cache = new ConcurrentHashMap<>();
 
   public String searchNextRoadEdgeFor(String vehicleType) {
-    return cache.computeIfAbsent(this, node -> {
-      TraCIRoadPosition nodeRoadPos = Simulation.convertRoad(node.longitude, node.latitude, true, vehicleType);
-      RoadPosition from = RoadPosition.from(nodeRoadPos);
-      nodeRoadPos.delete();
-      return from;
-    }).edgeId();
+    return snapCache.snap(longitude, latitude, vehicleType).edgeId();
   }
 }
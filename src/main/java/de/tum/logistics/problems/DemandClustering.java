@@ -0,0 +1,77 @@
+package de.tum.logistics.problems;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import de.tum.logistics.osm.OsmNode;
+
+// Merges demand points closer than a radius into the first of them, using a grid with the radius as cell size
+// so that only the 3x3 neighbouring cells have to be compared. Distances are OsmNode.distanceMetersL2.
+final class DemandClustering {
+  private static final double METERS_PER_DEGREE = 111_111;
+  // stops that already receive this many parcels do not absorb their neighbours
+  private static final int SATURATED_DEMAND = 10;
+
+  private DemandClustering() {
+  }
+
+  // points are visited in coordinate order, so the result only depends on the demand, not on map iteration order
+  static Map<OsmNode, Integer> cluster(Map<OsmNode, Integer> demandMap, double radiusMeters) {
+    List<OsmNode> nodes = new ArrayList<>(demandMap.keySet());
+    nodes.sort(Comparator.comparingDouble(OsmNode::longitude).thenComparingDouble(OsmNode::latitude)
+        .thenComparing(OsmNode::toString));
+    int[] demand = new int[nodes.size()];
+    boolean[] absorbed = new boolean[nodes.size()];
+
+    double cellDegrees = radiusMeters / METERS_PER_DEGREE;
+    Map<Long, List<Integer>> cells = new HashMap<>();
+    for (int i = 0; i < nodes.size(); i++) {
+      demand[i] = demandMap.get(nodes.get(i));
+      cells.computeIfAbsent(cellKey(cell(nodes.get(i).longitude(), cellDegrees), cell(nodes.get(i).latitude(), cellDegrees)),
+          key -> new ArrayList<>()).add(i);
+    }
+
+    for (int i = 0; i < nodes.size(); i++) {
+      if (absorbed[i] || demand[i] >= SATURATED_DEMAND) {
+        continue;
+      }
+      OsmNode location = nodes.get(i);
+      long column = cell(location.longitude(), cellDegrees);
+      long row = cell(location.latitude(), cellDegrees);
+      for (long c = column - 1; c <= column + 1; c++) {
+        for (long r = row - 1; r <= row + 1; r++) {
+          List<Integer> cell = cells.get(cellKey(c, r));
+          if (cell == null) {
+            continue;
+          }
+          for (int j : cell) {
+            if (j != i && !absorbed[j] && location.distanceMetersL2(nodes.get(j)) < radiusMeters) {
+              demand[i] += demand[j];
+              absorbed[j] = true;
+            }
+          }
+        }
+      }
+    }
+
+    Map<OsmNode, Integer> clusteredDemand = new LinkedHashMap<>();
+    for (int i = 0; i < nodes.size(); i++) {
+      if (!absorbed[i]) {
+        clusteredDemand.put(nodes.get(i), demand[i]);
+      }
+    }
+    return clusteredDemand;
+  }
+
+  private static long cell(double degrees, double cellDegrees) {
+    return (long) Math.floor(degrees / cellDegrees);
+  }
+
+  private static long cellKey(long column, long row) {
+    return (column << 32) ^ (row & 0xFFFFFFFFL);
+  }
+}
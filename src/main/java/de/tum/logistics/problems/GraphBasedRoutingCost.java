@@ -5,90 +5,315 @@ import com.graphhopper.jsprit.core.problem.cost.AbstractForwardVehicleRoutingTra
 import com.graphhopper.jsprit.core.problem.driver.Driver;
 import com.graphhopper.jsprit.core.problem.vehicle.Vehicle;
 import com.graphhopper.jsprit.core.util.Coordinate;
+import de.tum.logistics.osm.OsmNode;
+import de.tum.logistics.routing.ConcurrentLongDoubleMap;
+import de.tum.logistics.routing.ContractionHierarchy;
+import de.tum.logistics.routing.Dijkstra;
+import de.tum.logistics.routing.NetworkCache;
+import de.tum.logistics.routing.RoadGraph;
+import de.tum.logistics.routing.RoadNetwork;
+import de.tum.logistics.routing.RoadPosition;
+import de.tum.logistics.routing.RoutingEngine;
 import me.tongfei.progressbar.ProgressBar;
 import me.tongfei.progressbar.ProgressBarBuilder;
-import org.apache.commons.math3.linear.Array2DRowRealMatrix;
-import org.apache.commons.math3.linear.RealMatrix;
 import org.eclipse.sumo.libtraci.*;
 
+import java.io.File;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.IntStream;
 
 public final class GraphBasedRoutingCost extends AbstractForwardVehicleRoutingTransportCosts {
+  public enum Backend { DIJKSTRA, CONTRACTION_HIERARCHY }
+
+  private static final int METERS_PER_DEGREE = 111_111;
+  private static final double UNCONNECTED_PENALTY_FACTOR = 1.5;
+  private static final int NO_EDGE = -1;
+
   private final String vehicleType;
-  private final Map<String, Set<String>> edgeToJunctionMap = new ConcurrentHashMap<>();
-  private final Map<String, Integer> vertexIndices = new HashMap<>();
-  private RealMatrix distanceMatrix;
+  private final Backend backend;
+  private final File hierarchyFile;
+  // edges are interned to dense ids, edgeVertices maps an edge id to the graph vertices of its junctions
+  private final Map<String, Integer> edgeIds = new HashMap<>();
+  private String[] edgeNames;
+  private int[][] edgeVertices;
+  private RoadGraph graph;
+  private RoutingEngine routingEngine;
 
   public GraphBasedRoutingCost(String vehicleType) {
+    this(vehicleType, Backend.DIJKSTRA, null);
+  }
+
+  // the contraction hierarchy is persisted to hierarchyFile and reused as long as the road graph is unchanged
+  public GraphBasedRoutingCost(String vehicleType, Backend backend, File hierarchyFile) {
     this.vehicleType = vehicleType;
+    this.backend = backend;
+    this.hierarchyFile = hierarchyFile;
+  }
+
+  // sets up the road graph over all non-internal edges that have a lane permitting the vehicle class
+  public void setup() {
+    List<String> edges = new ArrayList<>();
+    for (String edge : Edge.getIDList()) {
+      if (edge.startsWith(":")) {
+        continue;
+      }
+      int lanes = Edge.getLaneNumber(edge);
+      for (int lane = 0; lane < lanes; lane++) {
+        if (Lane.getAllowed(edge + "_" + lane).contains(vehicleType)) {
+          edges.add(edge);
+          break;
+        }
+      }
+    }
+    setup(edges);
+  }
+
+  // same graph as setup(), read from a loaded net file instead of querying every edge and junction through TraCI
+  public void setup(RoadNetwork network) {
+    List<String> edges = network.edgesAllowing(vehicleType);
+    setup(edges,
+        edge -> network.junctionId(network.fromJunction(network.edgeIndex(edge))),
+        edge -> network.junctionId(network.toJunction(network.edgeIndex(edge))),
+        junction -> {
+          int index = network.junctionIndex(junction);
+          return new double[]{network.junctionX(index), network.junctionY(index)};
+        });
   }
 
   public void setup(List<String> edges) {
-    Set<String> vertices = new HashSet<>();
-    for (String edge : edges) {
-      vertices.add(Edge.getFromJunction(edge));
-      vertices.add(Edge.getToJunction(edge));
-    }
-    distanceMatrix = new Array2DRowRealMatrix(vertices.size(), vertices.size());
-    for (int i = 0; i < vertices.size(); i++) {
-      for (int j = 0; j < vertices.size(); j++) {
-        distanceMatrix.setEntry(i, j, i == j ? 0 : Double.POSITIVE_INFINITY);
-      }
-    }
-    int vertexIdCounter = 0;
-    for (String vertex : vertices) {
-      vertexIndices.put(vertex, vertexIdCounter++);
-    }
-    for (String edge : ProgressBar.wrap(edges, "Building distance matrix")) {
-      String from = Edge.getFromJunction(edge);
-      String to = Edge.getToJunction(edge);
-      TraCIPosition fromPosition = Junction.getPosition(from);
-      TraCIPosition toPosition = Junction.getPosition(to);
-      double deltaX = toPosition.getX() - fromPosition.getX();
-      double deltaY = toPosition.getY() - fromPosition.getY();
-      double streetLength = Math.hypot(deltaX, deltaY);
-      fromPosition.delete(); toPosition.delete();
-      Set<String> connectedJunctions = edgeToJunctionMap.computeIfAbsent(edge, s -> new HashSet<>());
-      connectedJunctions.add(from);
-      connectedJunctions.add(to);
-      streetLength = Math.min(streetLength, distanceMatrix.getEntry(vertexIndices.get(from), vertexIndices.get(to)));
-      streetLength = Math.min(streetLength, distanceMatrix.getEntry(vertexIndices.get(to), vertexIndices.get(from)));
-      distanceMatrix.setEntry(vertexIndices.get(from), vertexIndices.get(to), streetLength);
-      distanceMatrix.setEntry(vertexIndices.get(to), vertexIndices.get(from), streetLength);
-    }
-    ProgressBar pb = new ProgressBarBuilder().setInitialMax(vertices.size()).setTaskName("Building distance transitive closure").build();
-
-    // Floyd-Warshall algorithm
-    for (int k = 0; k < vertices.size(); k++) {
-      pb.step();
-      for (int i = 0; i < vertices.size(); i++) {
-        for (int j = 0; j < vertices.size(); j++) {
-          double transitiveDistanceFront = distanceMatrix.getEntry(i, k) + distanceMatrix.getEntry(k, j);
-          double transitiveDistanceBack = distanceMatrix.getEntry(j, k) + distanceMatrix.getEntry(k, i);
-          double directDistanceFront = distanceMatrix.getEntry(i, j);
-          double directDistanceBack = distanceMatrix.getEntry(j, i);
-          double minDistanceFront = Math.min(directDistanceFront, transitiveDistanceFront);
-          double minDistanceBack = Math.min(directDistanceBack, transitiveDistanceBack);
-          double sharedDistance = Math.min(minDistanceFront, minDistanceBack);
-          distanceMatrix.setEntry(i, j, sharedDistance);
-          distanceMatrix.setEntry(j, i, sharedDistance);
+    setup(edges, Edge::getFromJunction, Edge::getToJunction, GraphBasedRoutingCost::junctionPosition);
+  }
+
+  private void setup(List<String> edges, Function<String, String> fromJunction, Function<String, String> toJunction,
+                     Function<String, double[]> junctionPosition) {
+    RoadGraph.Builder graphBuilder = new RoadGraph.Builder();
+    Map<String, double[]> junctionPositions = new HashMap<>();
+    List<String[]> edgeJunctions = new ArrayList<>();
+    for (String edge : ProgressBar.wrap(edges, "Building road graph")) {
+      if (edgeIds.containsKey(edge)) {
+        continue;
+      }
+      String from = fromJunction.apply(edge);
+      String to = toJunction.apply(edge);
+      double[] fromPosition = junctionPositions.computeIfAbsent(from, junctionPosition);
+      double[] toPosition = junctionPositions.computeIfAbsent(to, junctionPosition);
+      double streetLength = Math.hypot(toPosition[0] - fromPosition[0], toPosition[1] - fromPosition[1]);
+      graphBuilder.addEdge(from, to, streetLength);
+      edgeIds.put(edge, edgeJunctions.size());
+      edgeJunctions.add(new String[]{from, to});
+    }
+    graph = graphBuilder.build();
+    routingEngine = switch (backend) {
+      case DIJKSTRA -> new Dijkstra(graph);
+      case CONTRACTION_HIERARCHY -> hierarchyFile != null
+          ? ContractionHierarchy.loadOrBuild(graph, hierarchyFile)
+          : ContractionHierarchy.build(graph);
+    };
+    edgeNames = new String[edgeJunctions.size()];
+    edgeIds.forEach((edge, id) -> edgeNames[id] = edge);
+    edgeVertices = new int[edgeJunctions.size()][];
+    for (int edge = 0; edge < edgeVertices.length; edge++) {
+      String[] junctions = edgeJunctions.get(edge);
+      edgeVertices[edge] = junctions[0].equals(junctions[1])
+          ? new int[]{graph.indexOf(junctions[0])}
+          : new int[]{graph.indexOf(junctions[0]), graph.indexOf(junctions[1])};
+    }
+    System.out.println("Road graph contains " + graph.vertexCount() + " junctions and " + edgeVertices.length + " edges");
+  }
+
+  private static double[] junctionPosition(String junction) {
+    TraCIPosition position = Junction.getPosition(junction);
+    double[] xy = {position.getX(), position.getY()};
+    position.delete();
+    return xy;
+  }
+
+  // Dense distance matrix for one problem, locations.get(i) must carry jsprit location index i
+  public StopMatrixRoutingCost createStopMatrix(List<Location> locations) {
+    if (graph == null) {
+      throw new IllegalStateException("Road graph not set up");
+    }
+    int size = locations.size();
+    int[] stopIndexOfEdge = new int[edgeVertices.length];
+    Arrays.fill(stopIndexOfEdge, -1);
+    int[] stopEdges = new int[size];
+    int stopCount = 0;
+    int[] locationStops = new int[size];
+    for (int i = 0; i < size; i++) {
+      if (locations.get(i).getIndex() != i) {
+        throw new IllegalArgumentException("Location at position " + i + " has index " + locations.get(i).getIndex());
+      }
+      int edge = edgeFromLocation(locations.get(i));
+      if (edge == NO_EDGE) {
+        locationStops[i] = -1;
+        continue;
+      }
+      if (stopIndexOfEdge[edge] < 0) {
+        stopIndexOfEdge[edge] = stopCount;
+        stopEdges[stopCount++] = edge;
+      }
+      locationStops[i] = stopIndexOfEdge[edge];
+    }
+
+    int[] targetSlotOfVertex = new int[graph.vertexCount()];
+    Arrays.fill(targetSlotOfVertex, -1);
+    int[] targets = new int[stopCount * 2];
+    int targetCount = 0;
+    int[][] stopTargetSlots = new int[stopCount][];
+    for (int stop = 0; stop < stopCount; stop++) {
+      int[] vertices = edgeVertices[stopEdges[stop]];
+      stopTargetSlots[stop] = new int[vertices.length];
+      for (int v = 0; v < vertices.length; v++) {
+        if (targetSlotOfVertex[vertices[v]] < 0) {
+          targetSlotOfVertex[vertices[v]] = targetCount;
+          targets[targetCount++] = vertices[v];
         }
+        stopTargetSlots[stop][v] = targetSlotOfVertex[vertices[v]];
       }
     }
+    targets = Arrays.copyOf(targets, targetCount);
+
+    double[] distances = new double[size * size];
+    int[] locationsPerStop = new int[stopCount];
+    for (int i = 0; i < size; i++) {
+      if (locationStops[i] < 0) {
+        for (int j = 0; j < size; j++) {
+          distances[i * size + j] = i == j ? 0 : airDistance(locations.get(i), locations.get(j));
+        }
+      } else {
+        locationsPerStop[locationStops[i]]++;
+      }
+    }
+    int[][] locationsByStop = new int[stopCount][];
+    for (int stop = 0; stop < stopCount; stop++) {
+      locationsByStop[stop] = new int[locationsPerStop[stop]];
+      locationsPerStop[stop] = 0;
+    }
+    for (int i = 0; i < size; i++) {
+      if (locationStops[i] >= 0) {
+        locationsByStop[locationStops[i]][locationsPerStop[locationStops[i]]++] = i;
+      }
+    }
+
+    // rows of stop distances persisted by earlier runs are read from the network cache, only stops with a missing
+    // pair are searched, and their rows are put back into the cache
+    int stops = stopCount;
+    NetworkCache networkCache = NetworkCache.get(vehicleType);
+    int[] cacheEdges = new int[stops];
+    boolean[] cachedRows = new boolean[stops];
+    if (networkCache != null) {
+      for (int stop = 0; stop < stops; stop++) {
+        cacheEdges[stop] = networkCache.edgeIndex(edgeNames[stopEdges[stop]]);
+      }
+      IntStream.range(0, stops).parallel()
+          .forEach(stop -> cachedRows[stop] = cachedRow(networkCache, cacheEdges, stop, new double[stops]));
+    }
+    int missingRows = 0;
+    for (boolean cached : cachedRows) {
+      missingRows += cached ? 0 : 1;
+    }
+    System.out.println("Reusing " + (stops - missingRows) + " of " + stops + " stop distance rows from the routing cache");
+    RoutingEngine.ManyToMany targetQuery = missingRows > 0 ? routingEngine.manyToMany(targets) : null;
+
+    ProgressBar pb = new ProgressBarBuilder().setInitialMax(stops).setTaskName("Computing stop distances").build();
+    IntStream.range(0, stops).parallel().forEach(stop -> {
+      double[] stopDistances = new double[stops];
+      // the cache only grows during a run, a row found complete above is still complete
+      if (cachedRows[stop]) {
+        cachedRow(networkCache, cacheEdges, stop, stopDistances);
+      } else {
+        double[] targetDistances = targetQuery.distancesFrom(edgeVertices[stopEdges[stop]]);
+        for (int other = 0; other < stops; other++) {
+          double minDistance = Double.POSITIVE_INFINITY;
+          for (int slot : stopTargetSlots[other]) {
+            minDistance = Math.min(minDistance, targetDistances[slot]);
+          }
+          stopDistances[other] = minDistance;
+          if (networkCache != null && other != stop) {
+            networkCache.putDistance(cacheEdges[stop], cacheEdges[other], minDistance);
+          }
+        }
+      }
+      for (int i : locationsByStop[stop]) {
+        for (int j = 0; j < size; j++) {
+          double distance;
+          if (i == j) {
+            distance = 0;
+          } else if (locationStops[j] < 0 || locationStops[j] == stop) {
+            distance = airDistance(locations.get(i), locations.get(j));
+          } else if (stopDistances[locationStops[j]] == Double.POSITIVE_INFINITY) {
+            distance = airDistance(locations.get(i), locations.get(j)) * UNCONNECTED_PENALTY_FACTOR;
+          } else {
+            distance = stopDistances[locationStops[j]];
+          }
+          distances[i * size + j] = distance;
+        }
+      }
+      pb.step();
+    });
     pb.close();
+    return new StopMatrixRoutingCost(this, distances, size);
   }
 
-  private final Map<Location, String> edgeCache = new ConcurrentHashMap<>();
+  // fills the distances from one stop to all others from the network cache, false as soon as a pair is missing
+  private static boolean cachedRow(NetworkCache networkCache, int[] cacheEdges, int stop, double[] stopDistances) {
+    if (networkCache == null) {
+      return false;
+    }
+    for (int other = 0; other < cacheEdges.length; other++) {
+      if (other == stop) {
+        continue;
+      }
+      double distance = networkCache.distance(cacheEdges[stop], cacheEdges[other]);
+      if (Double.isNaN(distance)) {
+        return false;
+      }
+      stopDistances[other] = distance;
+    }
+    return true;
+  }
 
-  private String edgeFromLocation(Location location) {
-    return edgeCache.computeIfAbsent(location, location1 -> {
-      Coordinate coordinate = location1.getCoordinate();
-      double x = coordinate.getX();
-      double y = coordinate.getY();
-      TraCIRoadPosition edge = Simulation.convertRoad(x, y, true, vehicleType);
-      return edge.getEdgeID();
-    });
+  // edges of jsprit locations by location index. The routing cost is shared by problems whose location indices
+  // overlap, so a slot keeps the coordinate it was snapped for and is snapped again for another coordinate.
+  private record IndexedEdge(double x, double y, int edge) {}
+
+  private volatile IndexedEdge[] edgesByIndex = new IndexedEdge[0];
+  // locations without an index
+  private final Map<Location, Integer> edgeCache = new ConcurrentHashMap<>();
+
+  private int edgeFromLocation(Location location) {
+    int index = location.getIndex();
+    if (index < 0) {
+      return edgeCache.computeIfAbsent(location, location1 -> snapEdge(location1.getCoordinate()));
+    }
+    Coordinate coordinate = location.getCoordinate();
+    IndexedEdge[] edges = edgesByIndex;
+    if (index < edges.length) {
+      IndexedEdge cached = edges[index];
+      if (cached != null && cached.x() == coordinate.getX() && cached.y() == coordinate.getY()) {
+        return cached.edge();
+      }
+    }
+    int edge = snapEdge(coordinate);
+    storeEdge(index, new IndexedEdge(coordinate.getX(), coordinate.getY(), edge));
+    return edge;
+  }
+
+  private synchronized void storeEdge(int index, IndexedEdge edge) {
+    IndexedEdge[] edges = edgesByIndex;
+    if (index >= edges.length) {
+      edges = Arrays.copyOf(edges, Math.max(index + 1, edges.length * 2));
+    }
+    // a reader that misses the write snaps the location again
+    edges[index] = edge;
+    edgesByIndex = edges;
+  }
+
+  private int snapEdge(Coordinate coordinate) {
+    RoadPosition snap = OsmNode.snapCache().snap(coordinate.getX(), coordinate.getY(), vehicleType);
+    return edgeIds.getOrDefault(snap.edgeId(), NO_EDGE);
   }
 
   @Override
@@ -107,42 +332,42 @@ public final class GraphBasedRoutingCost extends AbstractForwardVehicleRoutingTr
     return vehicle != null && vehicle.getType() != null ? distance * vehicle.getType().getVehicleCostParams().perDistanceUnit : distance;
   }
 
-  private record RouteCacheKey(String from, String to) {}
-  private final Map<RouteCacheKey, Double> distanceCache = new ConcurrentHashMap<>();
+  // edge pair distances keyed by (fromEdge << 32 | toEdge), NaN marks a pair that was not computed yet
+  private final ConcurrentLongDoubleMap distanceCache = new ConcurrentLongDoubleMap();
 
   public double calculateDistance(Location from, Location to) {
-    String edgeFrom = edgeFromLocation(from);
-    String edgeTo = edgeFromLocation(to);
-    RouteCacheKey key = new RouteCacheKey(edgeFrom, edgeTo);
-    return distanceCache.computeIfAbsent(key, (routeCacheKey) -> {
-      Set<String> fromVertices = edgeToJunctionMap.get(edgeFrom);
-      Set<String> toVertices = edgeToJunctionMap.get(edgeTo);
-      if (edgeFrom.equals(edgeTo) || fromVertices == null || toVertices == null) {
-        double deltaX = to.getCoordinate().getX() - from.getCoordinate().getX();
-        double deltaY = to.getCoordinate().getY() - from.getCoordinate().getY();
-        return Math.hypot(deltaX, deltaY);
-      }
-      double minDistance = Double.POSITIVE_INFINITY;
-      for (String fromVertex : fromVertices) {
-        for (String toVertex : toVertices) {
-          int fromIndex = vertexIndices.get(fromVertex);
-          int toIndex = vertexIndices.get(toVertex);
-          double distance = distanceMatrix.getEntry(fromIndex, toIndex);
-          double reverseDistance = distanceMatrix.getEntry(toIndex, fromIndex);
-          distance = Math.min(distance, reverseDistance);
-          if (distance < minDistance) {
-            minDistance = distance;
-          }
+    int edgeFrom = edgeFromLocation(from);
+    int edgeTo = edgeFromLocation(to);
+    if (edgeFrom == edgeTo || edgeFrom == NO_EDGE || edgeTo == NO_EDGE) {
+      return airDistance(from, to);
+    }
+    long key = (long) edgeFrom << 32 | edgeTo;
+    double minDistance = distanceCache.get(key);
+    if (Double.isNaN(minDistance)) {
+      NetworkCache networkCache = NetworkCache.get(vehicleType);
+      minDistance = networkCache != null ? networkCache.distance(edgeNames[edgeFrom], edgeNames[edgeTo]) : Double.NaN;
+      if (Double.isNaN(minDistance)) {
+        minDistance = routingEngine.distance(edgeVertices[edgeFrom], edgeVertices[edgeTo]);
+        if (networkCache != null) {
+          networkCache.putDistance(edgeNames[edgeFrom], edgeNames[edgeTo], minDistance);
         }
       }
-      // If no road connection is found, calculate the air distance
-      if (minDistance == Double.POSITIVE_INFINITY) {
-        double penaltyFactor = 1.5;
-        double deltaX = to.getCoordinate().getX() - from.getCoordinate().getX();
-        double deltaY = to.getCoordinate().getY() - from.getCoordinate().getY();
-        minDistance = Math.hypot(deltaX, deltaY) * penaltyFactor;
-      }
-      return minDistance;
-    });
+      distanceCache.put(key, minDistance);
+    }
+    // If no road connection is found, calculate the air distance
+    if (minDistance == Double.POSITIVE_INFINITY) {
+      minDistance = airDistance(from, to) * UNCONNECTED_PENALTY_FACTOR;
+    }
+    return minDistance;
+  }
+
+  // air distance in meters so that it is comparable to the road graph lengths
+  private static double airDistance(Location from, Location to) {
+    Coordinate fromCoordinate = from.getCoordinate();
+    Coordinate toCoordinate = to.getCoordinate();
+    double meanLatitude = Math.toRadians((fromCoordinate.getY() + toCoordinate.getY()) / 2);
+    double deltaX = (toCoordinate.getX() - fromCoordinate.getX()) * METERS_PER_DEGREE * Math.cos(meanLatitude);
+    double deltaY = (toCoordinate.getY() - fromCoordinate.getY()) * METERS_PER_DEGREE;
+    return Math.hypot(deltaX, deltaY);
   }
 }
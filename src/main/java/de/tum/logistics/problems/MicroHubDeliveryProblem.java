@@ -1,8 +1,6 @@
 package de.tum.logistics.problems;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.time.Duration;
 import java.time.Instant;
@@ -11,11 +9,13 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.concurrent.ThreadLocalRandom;
-
-import org.eclipse.sumo.libtraci.Simulation;
-import org.eclipse.sumo.libtraci.TraCIRoadPosition;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import com.graphhopper.jsprit.analysis.toolbox.Plotter;
 import com.graphhopper.jsprit.core.algorithm.VehicleRoutingAlgorithm;
@@ -35,20 +35,30 @@ import com.graphhopper.jsprit.core.util.Solutions;
 import de.tum.logistics.osm.DepotNode;
 import de.tum.logistics.osm.OsmNode;
 import de.tum.logistics.problems.serialization.Route;
+import de.tum.logistics.problems.serialization.RouteXmlWriter;
 import de.tum.logistics.problems.serialization.Stop;
+import de.tum.logistics.routing.RoadPosition;
 import me.tongfei.progressbar.ProgressBar;
 import me.tongfei.progressbar.ProgressBarBuilder;
 
 public class MicroHubDeliveryProblem {
 
+  private static final double CLUSTER_RADIUS_METERS = 5;
   private static final double OVERCAPACITY_FACTOR = 1.3;
   private static final int CARGO_BIKE_CAPACITY = 40;
   private static final int ITERATIONS = 5000;
 
+  private SolveLimits solveLimits = SolveLimits.iterations(ITERATIONS).withSystemProperties();
+  private List<Route> initialRoutes = List.of();
   private final List<VehicleRoutingProblem> problems = new ArrayList<>();
   private final List<VehicleRoutingProblemSolution> solutions = new ArrayList<>();
 
   public void init(int totalNumParcels, List<DepotNode> hubs) {
+    init(totalNumParcels, hubs, null);
+  }
+
+  // without a routing cost jsprit falls back to euclidean distances between the coordinates
+  public void init(int totalNumParcels, List<DepotNode> hubs, GraphBasedRoutingCost routingCost) {
     int totalAddresses = hubs.stream().map(d -> d.nodes().size()).reduce(0, Integer::sum);
 
     for (DepotNode hub : hubs) {
@@ -59,6 +69,10 @@ public class MicroHubDeliveryProblem {
           .build();
 
       vrpBuilder.setFleetSize(VehicleRoutingProblem.FleetSize.FINITE);
+      Location hubLocation = Location.Builder.newInstance()
+          .setIndex(0)
+          .setCoordinate(new Coordinate(hub.longitude(), hub.latitude()))
+          .build();
 
       int parcels = (int) Math.round((double)totalNumParcels * ((double)hub.nodes().size() / (double)totalAddresses));
       int numBikes = (int) Math.ceil(((double)parcels / (double)CARGO_BIKE_CAPACITY) * OVERCAPACITY_FACTOR);
@@ -67,9 +81,7 @@ public class MicroHubDeliveryProblem {
         VehicleImpl cargoBike = VehicleImpl.Builder.newInstance("cargoBike" + i)
             .setType(cargoBikeVehicle)
             .setReturnToDepot(true)
-            .setStartLocation(Location.Builder.newInstance()
-                .setCoordinate(new Coordinate(hub.longitude(), hub.latitude()))
-                .build())
+            .setStartLocation(hubLocation)
             .build();
         vrpBuilder.addVehicle(cargoBike);
       }
@@ -84,50 +96,92 @@ public class MicroHubDeliveryProblem {
 
       demandMap = clusterDemand(demandMap);
 
+      List<Location> locations = new ArrayList<>();
+      locations.add(hubLocation);
       for (Map.Entry<OsmNode, Integer> entry : ProgressBar.wrap(demandMap.entrySet(),
           "Converting geo coordinates to jsprit jobs")) {
         OsmNode location = entry.getKey();
         Integer demand = entry.getValue();
+        Location jobLocation = Location.Builder.newInstance()
+            .setIndex(locations.size())
+            .setCoordinate(new Coordinate(location.longitude(), location.latitude()))
+            .build();
+        locations.add(jobLocation);
         Service delivery = Service.Builder.newInstance("delivery" + location.hashCode())
             .addSizeDimension(0, demand)
-            .setLocation(Location.newInstance(location.longitude(), location.latitude()))
+            .setLocation(jobLocation)
             .build();
         vrpBuilder.addJob(delivery);
       }
+      if (routingCost != null) {
+        vrpBuilder.setRoutingCost(routingCost.createStopMatrix(locations));
+      }
 
       problems.add(vrpBuilder.build());
     }
 
   }
 
+  // Hubs are solved concurrently, each by its own coordinating thread. Their insertion work shares one
+  // work-stealing pool, and hubs get parallelism relative to the largest one, so freed threads go to the large hubs.
   public void solve() {
     if (problems.isEmpty()) {
       throw new IllegalStateException("Vehicle routing problems not initialized");
     }
     Instant timeBeforeSolve = Instant.now();
     int threads = Runtime.getRuntime().availableProcessors();
-
-    for (VehicleRoutingProblem vrp : problems) {
-      System.out.println("Using " + threads + " threads for solving " + ITERATIONS + " iterations");
-      System.out.println("Solving vehicle routing problem for " + vrp.getJobs().size() + " stops...");
-      VehicleRoutingAlgorithm algorithm = Jsprit.Builder.newInstance(vrp).setExecutorService(
-          Executors.newFixedThreadPool(threads), threads).buildAlgorithm();
-      algorithm.setMaxIterations(ITERATIONS);
-      ProgressBar pb = new ProgressBarBuilder().setInitialMax(ITERATIONS).setTaskName("Solving VRP").build();
-      algorithm.addListener((IterationEndsListener) (i, problem, solutions) -> {
-        pb.step();
-        pb.setExtraMessage("Best solution cost: " + Solutions.bestOf(solutions).getCost());
-      });
-      pb.maxHint(ITERATIONS);
-
-      VehicleRoutingProblemSolution solution = Solutions.bestOf(algorithm.searchSolutions());
-
-      System.out.println();
-      System.out.println("Solution found after " + Duration.between(timeBeforeSolve, Instant.now()).toSeconds()
-          + " seconds, skipped " + solution.getUnassignedJobs().size() + " jobs");
-      solutions.add(solution);
+    int maxJobs = problems.stream().mapToInt(vrp -> vrp.getJobs().size()).max().orElse(1);
+
+    System.out.println("Using " + threads + " threads for solving " + problems.size() + " hubs with up to " + solveLimits.maxIterations() + " iterations each");
+    ForkJoinPool insertionPool = new ForkJoinPool(threads);
+    ExecutorService hubPool = Executors.newFixedThreadPool(problems.size());
+    ProgressBar pb = new ProgressBarBuilder().setInitialMax((long) solveLimits.maxIterations() * problems.size()).setTaskName("Solving VRPs").build();
+    AtomicInteger solvedHubs = new AtomicInteger();
+    try {
+      List<Future<VehicleRoutingProblemSolution>> futures = new ArrayList<>();
+      for (VehicleRoutingProblem vrp : problems) {
+        int hubThreads = Math.max(1, (int) Math.ceil((double) threads * vrp.getJobs().size() / Math.max(1, maxJobs)));
+        VehicleRoutingAlgorithm algorithm = Jsprit.Builder.newInstance(vrp)
+            .setExecutorService(insertionPool, hubThreads).buildAlgorithm();
+        SolveTermination termination = new SolveTermination(solveLimits);
+        termination.attachTo(algorithm);
+        algorithm.addListener((IterationEndsListener) (i, problem, solutions) -> pb.step());
+        // built here rather than in the hub task, snapping may fall back to the single TraCI connection
+        if (!initialRoutes.isEmpty()) {
+          algorithm.addInitialSolution(WarmStart.initialSolution(vrp, initialRoutes, "bicycle", algorithm.getObjectiveFunction()));
+        }
+        futures.add(hubPool.submit(() -> {
+          VehicleRoutingProblemSolution solution = Solutions.bestOf(algorithm.searchSolutions());
+          // hubs that stop early hand their remaining iterations to the overall progress
+          pb.stepBy(solveLimits.maxIterations() - termination.completedIterations());
+          pb.setExtraMessage(solvedHubs.incrementAndGet() + "/" + problems.size() + " hubs solved");
+          return solution;
+        }));
+      }
+      for (int hub = 0; hub < futures.size(); hub++) {
+        VehicleRoutingProblemSolution solution = futures.get(hub).get();
+        solutions.add(solution);
+        System.out.println();
+        System.out.println("Hub " + hub + " with " + problems.get(hub).getJobs().size() + " stops solved, cost "
+            + solution.getCost() + ", skipped " + solution.getUnassignedJobs().size() + " jobs");
+      }
+    } catch (InterruptedException | ExecutionException e) {
+      throw new RuntimeException(e);
+    } finally {
+      hubPool.shutdownNow();
+      insertionPool.shutdown();
+      pb.close();
     }
+    System.out.println("All hubs solved after " + Duration.between(timeBeforeSolve, Instant.now()).toSeconds() + " seconds");
+  }
+
+  public void setSolveLimits(SolveLimits solveLimits) {
+    this.solveLimits = solveLimits;
+  }
 
+  // routes of an earlier bake, each hub only picks up the routes that mostly visit its own jobs
+  public void setInitialRoutes(List<Route> initialRoutes) {
+    this.initialRoutes = initialRoutes;
   }
 
   public void writeRouteXML(File targetFile, String carrierName, String carrierColor) {
@@ -135,58 +189,47 @@ public class MicroHubDeliveryProblem {
       throw new IllegalStateException("No solution available");
     }
 
-    List<Route> routes = new ArrayList<>();
-
     System.out.println("Writing " + carrierName + " routes to " + targetFile.getAbsolutePath());
 
-    int numRoute = 0;
-    int totalVehicleCount = solutions.stream().mapToInt(s -> s.getRoutes().size()).sum();
-
-    for (VehicleRoute vhRoute : solutions.stream().flatMap(s -> s.getRoutes().stream()).toList()) {
-      System.out.println("Vehicle " + (numRoute+1) + " of " + totalVehicleCount + " has " + vhRoute.getTourActivities().getJobs().size() + " stops");
-      List<Stop> stops = new ArrayList<>();
-      List<String> edges = new ArrayList<>();
-
-      Location hubLocation = vhRoute.getActivities().getFirst().getLocation();
-      String hubEdge = Simulation.convertRoad(hubLocation.getCoordinate().getX(), hubLocation.getCoordinate().getY(), true, "bicycle").getEdgeID();
-
-      edges.add(hubEdge);
-      for (TourActivity activity : vhRoute.getActivities()) {
-        Coordinate stopCoords = activity.getLocation().getCoordinate();
-        TraCIRoadPosition roadPos = Simulation.convertRoad(stopCoords.getX(), stopCoords.getY(), true, "bicycle");
-
-        edges.add(roadPos.getEdgeID());
-
-        int packets = activity.getSize().get(0);
-        boolean willBeHome = ThreadLocalRandom.current().nextDouble() <= 0.95;
-        int approachTime = (int) (ThreadLocalRandom.current().nextGaussian(10, 5));// 5-15 seconds
-        int singleStairTime = (int) (ThreadLocalRandom.current().nextGaussian(15 + packets*2.5d, 5));// 15-25 seconds
-        int stairs = ThreadLocalRandom.current().nextDouble() < 0.4 ? 0 : (ThreadLocalRandom.current().nextInt(1, 6));
-        int stairTime = stairs * singleStairTime;
-        int waitingTime = (int) (ThreadLocalRandom.current().nextGaussian(willBeHome ? 20 : 120, 10));// 20-40 seconds
-        int loadUnloadTime = (int) (ThreadLocalRandom.current().nextGaussian(60 + packets*20, 20));// 40-80 seconds
-        int totalDuration = 2 * approachTime + 2 * stairTime + waitingTime + loadUnloadTime;
-        stops.add(new Stop(roadPos.getEdgeID(), roadPos.getPos(), totalDuration, true));
-      }
-      edges.add(hubEdge);
-      Route route = new Route("delivery_" + carrierName + "_" + numRoute, edges, stops);
-      route = route.withSortedStopsOnSameEdge();
-      routes.add(route);
-      numRoute++;
-    }
-
-    System.out.println("Done computing routes, writing to file...");
+    List<VehicleRoute> vehicleRoutes = solutions.stream().flatMap(s -> s.getRoutes().stream()).toList();
+    StopSnaps snaps = StopSnaps.of(vehicleRoutes, "bicycle");
+    System.out.println("Snapped " + snaps.size() + " distinct stop and hub locations");
 
-    try (BufferedWriter writer = new BufferedWriter(new FileWriter(targetFile))) {
-      writer.write("<routes>");
-      writer.newLine();
-      writer.write("    <vType id=\"delivery_bike_" + carrierName + "\" vClass=\"bicycle\" color=\"" + carrierColor + "\"/>");
-      writer.newLine();
-      for (Route route : routes) {
-        route.writeXML(writer, "delivery_bike_" + carrierName);
-        writer.newLine();
+    int numRoute = 0;
+    int totalVehicleCount = vehicleRoutes.size();
+
+    // each route is written as soon as it is built, only one is held at a time
+    try (RouteXmlWriter writer = new RouteXmlWriter(targetFile)) {
+      writer.vehicleType("delivery_bike_" + carrierName, "bicycle", carrierColor, null);
+      for (VehicleRoute vhRoute : vehicleRoutes) {
+        System.out.println("Vehicle " + (numRoute+1) + " of " + totalVehicleCount + " has " + vhRoute.getTourActivities().getJobs().size() + " stops");
+        List<Stop> stops = new ArrayList<>();
+        List<String> edges = new ArrayList<>();
+
+        String hubEdge = snaps.get(vhRoute.getActivities().getFirst().getLocation()).edgeId();
+
+        edges.add(hubEdge);
+        for (TourActivity activity : vhRoute.getActivities()) {
+          RoadPosition roadPos = snaps.get(activity.getLocation());
+
+          edges.add(roadPos.edgeId());
+
+          int packets = activity.getSize().get(0);
+          boolean willBeHome = ThreadLocalRandom.current().nextDouble() <= 0.95;
+          int approachTime = (int) (ThreadLocalRandom.current().nextGaussian(10, 5));// 5-15 seconds
+          int singleStairTime = (int) (ThreadLocalRandom.current().nextGaussian(15 + packets*2.5d, 5));// 15-25 seconds
+          int stairs = ThreadLocalRandom.current().nextDouble() < 0.4 ? 0 : (ThreadLocalRandom.current().nextInt(1, 6));
+          int stairTime = stairs * singleStairTime;
+          int waitingTime = (int) (ThreadLocalRandom.current().nextGaussian(willBeHome ? 20 : 120, 10));// 20-40 seconds
+          int loadUnloadTime = (int) (ThreadLocalRandom.current().nextGaussian(60 + packets*20, 20));// 40-80 seconds
+          int totalDuration = 2 * approachTime + 2 * stairTime + waitingTime + loadUnloadTime;
+          stops.add(new Stop(roadPos.edgeId(), roadPos.pos(), totalDuration, true));
+        }
+        edges.add(hubEdge);
+        Route route = new Route("delivery_" + carrierName + "_" + numRoute, edges, stops);
+        writer.trip(route.withSortedStopsOnSameEdge(), "delivery_bike_" + carrierName);
+        numRoute++;
       }
-      writer.write("</routes>");
     } catch (IOException e) {
       e.printStackTrace();
     }
@@ -219,22 +262,7 @@ public class MicroHubDeliveryProblem {
   }
 
   public Map<OsmNode, Integer> clusterDemand(Map<OsmNode, Integer> demandMap) {
-    Map<OsmNode, Integer> clusteredDemand = new HashMap<>(demandMap);
-    for (OsmNode location : demandMap.keySet()) {
-      if (!clusteredDemand.containsKey(location) || clusteredDemand.get(location) >= 10) {
-        continue;
-      }
-      for (OsmNode otherLocation : demandMap.keySet()) {
-        if (location == otherLocation) {
-          continue;
-        }
-        if (location.distanceMetersL2(otherLocation) < 5) {
-          clusteredDemand.put(location, clusteredDemand.get(location) + demandMap.get(otherLocation));
-          clusteredDemand.remove(otherLocation);
-        }
-      }
-    }
-    return clusteredDemand;
+    return DemandClustering.cluster(demandMap, CLUSTER_RADIUS_METERS);
   }
 
 }
\ No newline at end of file
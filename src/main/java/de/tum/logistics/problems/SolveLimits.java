@@ -0,0 +1,62 @@
+package de.tum.logistics.problems;
+
+import java.lang.management.ManagementFactory;
+import java.time.Duration;
+import java.time.Instant;
+
+// When a jsprit search stops: after maxIterations, or earlier once the time budget or deadline is reached, the best
+// cost did not improve for noImprovementIterations, or the coefficient of variation of the best cost over the last
+// variationWindow iterations fell below variationThreshold. Zero or null disables a criterion.
+public record SolveLimits(
+    int maxIterations,
+    Duration timeBudget,
+    Instant deadline,
+    int noImprovementIterations,
+    double variationThreshold,
+    int variationWindow
+) {
+  public static SolveLimits iterations(int maxIterations) {
+    return new SolveLimits(maxIterations, null, null, 0, 0, 0);
+  }
+
+  public SolveLimits withTimeBudget(Duration timeBudget) {
+    return new SolveLimits(maxIterations, timeBudget, deadline, noImprovementIterations, variationThreshold, variationWindow);
+  }
+
+  public SolveLimits withDeadline(Instant deadline) {
+    return new SolveLimits(maxIterations, timeBudget, deadline, noImprovementIterations, variationThreshold, variationWindow);
+  }
+
+  public SolveLimits withNoImprovement(int iterations) {
+    return new SolveLimits(maxIterations, timeBudget, deadline, iterations, variationThreshold, variationWindow);
+  }
+
+  public SolveLimits withVariationCoefficient(double threshold, int window) {
+    return new SolveLimits(maxIterations, timeBudget, deadline, noImprovementIterations, threshold, window);
+  }
+
+  // -Dsolve.iterations, -Dsolve.timeBudgetSeconds, -Dsolve.noImprovementIterations, -Dsolve.variationThreshold and
+  // -Dsolve.variationWindow override single criteria, -Dsolve.windowMinutes bounds all solves since the JVM started
+  public SolveLimits withSystemProperties() {
+    SolveLimits limits = this;
+    if (System.getProperty("solve.iterations") != null) {
+      limits = new SolveLimits(Integer.getInteger("solve.iterations"), limits.timeBudget, limits.deadline,
+          limits.noImprovementIterations, limits.variationThreshold, limits.variationWindow);
+    }
+    if (System.getProperty("solve.timeBudgetSeconds") != null) {
+      limits = limits.withTimeBudget(Duration.ofSeconds(Long.getLong("solve.timeBudgetSeconds")));
+    }
+    if (System.getProperty("solve.windowMinutes") != null) {
+      Instant jvmStart = Instant.ofEpochMilli(ManagementFactory.getRuntimeMXBean().getStartTime());
+      limits = limits.withDeadline(jvmStart.plus(Duration.ofMinutes(Long.getLong("solve.windowMinutes"))));
+    }
+    if (System.getProperty("solve.noImprovementIterations") != null) {
+      limits = limits.withNoImprovement(Integer.getInteger("solve.noImprovementIterations"));
+    }
+    if (System.getProperty("solve.variationThreshold") != null) {
+      limits = limits.withVariationCoefficient(Double.parseDouble(System.getProperty("solve.variationThreshold")),
+          Integer.getInteger("solve.variationWindow", 100));
+    }
+    return limits;
+  }
+}
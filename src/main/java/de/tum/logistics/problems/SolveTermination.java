@@ -0,0 +1,96 @@
+package de.tum.logistics.problems;
+
+import java.time.Instant;
+import java.util.Collection;
+
+import com.graphhopper.jsprit.core.algorithm.SearchStrategy;
+import com.graphhopper.jsprit.core.algorithm.VehicleRoutingAlgorithm;
+import com.graphhopper.jsprit.core.algorithm.listener.AlgorithmStartsListener;
+import com.graphhopper.jsprit.core.algorithm.listener.IterationEndsListener;
+import com.graphhopper.jsprit.core.algorithm.termination.PrematureAlgorithmTermination;
+import com.graphhopper.jsprit.core.problem.VehicleRoutingProblem;
+import com.graphhopper.jsprit.core.problem.solution.VehicleRoutingProblemSolution;
+import com.graphhopper.jsprit.core.util.Solutions;
+
+// Applies SolveLimits to one algorithm run, the criteria are evaluated at the end of every iteration
+final class SolveTermination implements PrematureAlgorithmTermination, IterationEndsListener, AlgorithmStartsListener {
+  private final SolveLimits limits;
+  private final double[] recentBestCosts;
+  private Instant stopAt;
+  private double bestCost = Double.POSITIVE_INFINITY;
+  private int iterationsWithoutImprovement = 0;
+  private volatile int completedIterations = 0;
+  private volatile String reason;
+
+  SolveTermination(SolveLimits limits) {
+    this.limits = limits;
+    this.recentBestCosts = new double[Math.max(0, limits.variationWindow())];
+  }
+
+  void attachTo(VehicleRoutingAlgorithm algorithm) {
+    algorithm.setMaxIterations(limits.maxIterations());
+    algorithm.setPrematureAlgorithmTermination(this);
+    algorithm.addListener(this);
+  }
+
+  int completedIterations() {
+    return completedIterations;
+  }
+
+  // why the search stopped early, null if it ran all iterations
+  String reason() {
+    return reason;
+  }
+
+  @Override
+  public void informAlgorithmStarts(VehicleRoutingProblem problem, VehicleRoutingAlgorithm algorithm,
+                                    Collection<VehicleRoutingProblemSolution> solutions) {
+    Instant now = Instant.now();
+    stopAt = limits.timeBudget() != null ? now.plus(limits.timeBudget()) : null;
+    if (limits.deadline() != null && (stopAt == null || limits.deadline().isBefore(stopAt))) {
+      stopAt = limits.deadline();
+    }
+  }
+
+  @Override
+  public void informIterationEnds(int i, VehicleRoutingProblem problem, Collection<VehicleRoutingProblemSolution> solutions) {
+    double cost = Solutions.bestOf(solutions).getCost();
+    if (cost < bestCost) {
+      bestCost = cost;
+      iterationsWithoutImprovement = 0;
+    } else {
+      iterationsWithoutImprovement++;
+    }
+    int iteration = completedIterations;
+    if (recentBestCosts.length > 0) {
+      recentBestCosts[iteration % recentBestCosts.length] = bestCost;
+    }
+    completedIterations = iteration + 1;
+
+    if (stopAt != null && Instant.now().isAfter(stopAt)) {
+      reason = "time budget exhausted";
+    } else if (limits.noImprovementIterations() > 0 && iterationsWithoutImprovement >= limits.noImprovementIterations()) {
+      reason = "no improvement for " + iterationsWithoutImprovement + " iterations";
+    } else if (recentBestCosts.length > 0 && completedIterations >= recentBestCosts.length
+        && variationCoefficient() < limits.variationThreshold()) {
+      reason = "best cost stagnated over " + recentBestCosts.length + " iterations";
+    }
+  }
+
+  private double variationCoefficient() {
+    double sum = 0;
+    double sumOfSquares = 0;
+    for (double cost : recentBestCosts) {
+      sum += cost;
+      sumOfSquares += cost * cost;
+    }
+    double mean = sum / recentBestCosts.length;
+    double variance = Math.max(0, sumOfSquares / recentBestCosts.length - mean * mean);
+    return mean > 0 ? Math.sqrt(variance) / mean : 0;
+  }
+
+  @Override
+  public boolean isPrematureBreak(SearchStrategy.DiscoveredSolution discoveredSolution) {
+    return reason != null;
+  }
+}
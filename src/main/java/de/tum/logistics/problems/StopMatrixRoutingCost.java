@@ -0,0 +1,44 @@
+package de.tum.logistics.problems;
+
+import com.graphhopper.jsprit.core.problem.Location;
+import com.graphhopper.jsprit.core.problem.cost.AbstractForwardVehicleRoutingTransportCosts;
+import com.graphhopper.jsprit.core.problem.driver.Driver;
+import com.graphhopper.jsprit.core.problem.vehicle.Vehicle;
+
+// Road network distances between the locations of one problem, row-major by jsprit location index
+public final class StopMatrixRoutingCost extends AbstractForwardVehicleRoutingTransportCosts {
+  private final GraphBasedRoutingCost fallback;
+  private final double[] distances;
+  private final int size;
+
+  StopMatrixRoutingCost(GraphBasedRoutingCost fallback, double[] distances, int size) {
+    this.fallback = fallback;
+    this.distances = distances;
+    this.size = size;
+  }
+
+  @Override
+  public double getDistance(Location from, Location to, double v, Vehicle vehicle) {
+    return calculateDistance(from, to);
+  }
+
+  @Override
+  public double getTransportTime(Location from, Location to, double v, Driver driver, Vehicle vehicle) {
+    return calculateDistance(from, to);
+  }
+
+  @Override
+  public double getTransportCost(Location from, Location to, double v, Driver driver, Vehicle vehicle) {
+    double distance = this.calculateDistance(from, to);
+    return vehicle != null && vehicle.getType() != null ? distance * vehicle.getType().getVehicleCostParams().perDistanceUnit : distance;
+  }
+
+  public double calculateDistance(Location from, Location to) {
+    int fromIndex = from.getIndex();
+    int toIndex = to.getIndex();
+    if (fromIndex < 0 || toIndex < 0 || fromIndex >= size || toIndex >= size) {
+      return fallback.calculateDistance(from, to);
+    }
+    return distances[fromIndex * size + toIndex];
+  }
+}
@@ -0,0 +1,78 @@
+package de.tum.logistics.problems;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.graphhopper.jsprit.core.problem.Location;
+import com.graphhopper.jsprit.core.problem.solution.route.VehicleRoute;
+import com.graphhopper.jsprit.core.problem.solution.route.activity.TourActivity;
+import com.graphhopper.jsprit.core.util.Coordinate;
+import de.tum.logistics.osm.OsmNode;
+import de.tum.logistics.routing.EdgeSnapper;
+import de.tum.logistics.routing.RoadPosition;
+
+// Road positions of all locations visited by solved routes, snapped up front so that writing the routes is pure Java.
+// Every distinct coordinate is snapped once, which covers hubs and depots shared by many routes and parcels clustered
+// at the same address.
+final class StopSnaps {
+  private record Point(double longitude, double latitude) {}
+
+  private final Map<Point, RoadPosition> positions;
+
+  private StopSnaps(Map<Point, RoadPosition> positions) {
+    this.positions = positions;
+  }
+
+  static StopSnaps of(Collection<VehicleRoute> routes, String vehicleClass) {
+    Set<Point> points = new LinkedHashSet<>();
+    for (VehicleRoute route : routes) {
+      for (TourActivity activity : route.getActivities()) {
+        points.add(point(activity.getLocation()));
+      }
+    }
+    // snaps already in the snap cache, e.g. seeded from an address snapshot, are reused
+    Map<Point, RoadPosition> positions = new HashMap<>();
+    List<Point> missing = new ArrayList<>();
+    for (Point point : points) {
+      RoadPosition position = OsmNode.snapCache().cached(point.longitude(), point.latitude(), vehicleClass);
+      if (position != null) {
+        positions.put(point, position);
+      } else {
+        missing.add(point);
+      }
+    }
+    double[] longitudes = new double[missing.size()];
+    double[] latitudes = new double[missing.size()];
+    for (int i = 0; i < missing.size(); i++) {
+      longitudes[i] = missing.get(i).longitude();
+      latitudes[i] = missing.get(i).latitude();
+    }
+    RoadPosition[] snapped = EdgeSnapper.snapAll(longitudes, latitudes, vehicleClass);
+    for (int i = 0; i < missing.size(); i++) {
+      positions.put(missing.get(i), snapped[i]);
+    }
+    return new StopSnaps(positions);
+  }
+
+  private static Point point(Location location) {
+    Coordinate coordinate = location.getCoordinate();
+    return new Point(coordinate.getX(), coordinate.getY());
+  }
+
+  RoadPosition get(Location location) {
+    RoadPosition position = positions.get(point(location));
+    if (position == null) {
+      throw new IllegalStateException("Location " + location.getId() + " was not snapped");
+    }
+    return position;
+  }
+
+  int size() {
+    return positions.size();
+  }
+}
@@ -19,42 +19,55 @@ import com.graphhopper.jsprit.core.util.Coordinate;
 import com.graphhopper.jsprit.core.util.Solutions;
 import de.tum.logistics.osm.OsmNode;
 import de.tum.logistics.problems.serialization.Route;
+import de.tum.logistics.problems.serialization.RouteXmlWriter;
 import de.tum.logistics.problems.serialization.Stop;
+import de.tum.logistics.routing.RoadPosition;
 import me.tongfei.progressbar.ProgressBar;
 import me.tongfei.progressbar.ProgressBarBuilder;
-import org.eclipse.sumo.libtraci.Simulation;
-import org.eclipse.sumo.libtraci.TraCIRoadPosition;
 import org.eclipse.sumo.libtraci.TraCIStage;
 
-import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileWriter;
 import java.io.IOException;
 import java.time.Duration;
 import java.time.Instant;
 import java.util.*;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ThreadLocalRandom;
 
 public class TruckDeliveryProblem {
   private final static int VEHICLE_CAPACITY = 150;
   private final static int ITERATIONS = 1_000;
+  private final static double CLUSTER_RADIUS_METERS = 20;
   private final static double OVERCAPACITY_FACTOR = 1.3;
   public final static String ENTRY_EDGE = "265616622#0";
   public final static String EXIT_EDGE = "315225707";
-  private final static Location ORIGIN_LOCATION = Location.newInstance(11.584762300907554, 48.18316907203498);
-
+  private final static Location ORIGIN_LOCATION = Location.Builder.newInstance()
+      .setIndex(0)
+      .setCoordinate(Coordinate.newInstance(11.584762300907554, 48.18316907203498))
+      .build();
+
+  private SolveLimits solveLimits = SolveLimits.iterations(ITERATIONS).withSystemProperties();
+  private List<Route> initialRoutes = List.of();
+  private int vehicleCapacity = VEHICLE_CAPACITY;
+  private int threads = Runtime.getRuntime().availableProcessors();
+  private Long seed;
   private VehicleRoutingProblem vrp;
   private VehicleRoutingProblemSolution solution;
 
   public void init(List<OsmNode> possibleLocations, int numParcels) {
+    init(possibleLocations, numParcels, null);
+  }
+
+  // without a routing cost jsprit falls back to euclidean distances between the coordinates
+  public void init(List<OsmNode> possibleLocations, int numParcels, GraphBasedRoutingCost routingCost) {
     VehicleRoutingProblem.Builder vrpBuilder = VehicleRoutingProblem.Builder.newInstance();
     VehicleTypeImpl truckVehicle = VehicleTypeImpl.Builder.newInstance("truckBuilder")
-        .addCapacityDimension(0, VEHICLE_CAPACITY)
+        .addCapacityDimension(0, vehicleCapacity)
         .build();
 
     vrpBuilder.setFleetSize(FleetSize.FINITE);
-    int vehicleCount = (int)Math.round(((double)numParcels / (double)VEHICLE_CAPACITY) * OVERCAPACITY_FACTOR);
+    int vehicleCount = (int)Math.round(((double)numParcels / (double)vehicleCapacity) * OVERCAPACITY_FACTOR);
     for (int i = 0; i < vehicleCount; i++) {
       VehicleImpl vehicle = VehicleImpl.Builder.newInstance("truck" + i)
           .setStartLocation(ORIGIN_LOCATION)
@@ -65,7 +78,7 @@ public class TruckDeliveryProblem {
     }
 
     Map<OsmNode, Integer> demandMap = new HashMap<>();
-    Random rand = new Random();
+    Random rand = seed != null ? new Random(seed) : new Random();
 
     for (int i = 0; i < numParcels; i++) {
       OsmNode location = possibleLocations.get(rand.nextInt(possibleLocations.size()));
@@ -78,15 +91,25 @@ public class TruckDeliveryProblem {
     System.out.println("Filtered out an additional " + (osmNodes.size() - demandMap.size()) + " unroutable of " + osmNodes.size() + " stops");
     System.out.println("Clustered demand contains " + demandMap.size() + " stops");
 
+    List<Location> locations = new ArrayList<>();
+    locations.add(ORIGIN_LOCATION);
     for (Map.Entry<OsmNode, Integer> entry : ProgressBar.wrap(demandMap.entrySet(), "Converting geo coordinates to jsprit jobs")) {
       OsmNode location = entry.getKey();
       Integer demand = entry.getValue();
+      Location jobLocation = Location.Builder.newInstance()
+        .setIndex(locations.size())
+        .setCoordinate(Coordinate.newInstance(location.longitude(), location.latitude()))
+        .build();
+      locations.add(jobLocation);
       Service delivery = Service.Builder.newInstance("delivery" + location.hashCode())
         .addSizeDimension(0, demand)
-        .setLocation(Location.newInstance(location.longitude(), location.latitude()))
+        .setLocation(jobLocation)
         .build();
       vrpBuilder.addJob(delivery);
     }
+    if (routingCost != null) {
+      vrpBuilder.setRoutingCost(routingCost.createStopMatrix(locations));
+    }
     vrp = vrpBuilder.build();
   }
 
@@ -95,87 +118,109 @@ public class TruckDeliveryProblem {
       throw new IllegalStateException("Vehicle routing problem not initialized");
     }
     Instant timeBeforeSolve = Instant.now();
-    int threads = Runtime.getRuntime().availableProcessors();
 
-    System.out.println("Using " + threads + " threads for solving " + ITERATIONS + " iterations");
+    System.out.println("Using " + threads + " threads for solving up to " + solveLimits.maxIterations() + " iterations");
     System.out.println("Solving vehicle routing problem for " + vrp.getJobs().size() + " stops...");
-    VehicleRoutingAlgorithm algorithm = Jsprit.Builder.newInstance(vrp).setExecutorService(
-      Executors.newFixedThreadPool(threads), threads
-    ).buildAlgorithm();
-    algorithm.setMaxIterations(ITERATIONS);
-    ProgressBar pb = new ProgressBarBuilder().setInitialMax(ITERATIONS).setTaskName("Solving VRP").build();
+    ExecutorService executor = Executors.newFixedThreadPool(threads);
+    Jsprit.Builder builder = Jsprit.Builder.newInstance(vrp).setExecutorService(executor, threads);
+    if (seed != null) {
+      builder.setRandom(new Random(seed));
+    }
+    VehicleRoutingAlgorithm algorithm = builder.buildAlgorithm();
+    SolveTermination termination = new SolveTermination(solveLimits);
+    termination.attachTo(algorithm);
+    if (!initialRoutes.isEmpty()) {
+      algorithm.addInitialSolution(WarmStart.initialSolution(vrp, initialRoutes, "passenger", algorithm.getObjectiveFunction()));
+    }
+    ProgressBar pb = new ProgressBarBuilder().setInitialMax(solveLimits.maxIterations()).setTaskName("Solving VRP").build();
     algorithm.addListener((IterationEndsListener) (i, problem, solutions) -> {
       pb.step();
       pb.setExtraMessage("Best solution cost: " + Solutions.bestOf(solutions).getCost());
     });
-    pb.maxHint(ITERATIONS);
+    pb.maxHint(solveLimits.maxIterations());
 
-    solution = Solutions.bestOf(algorithm.searchSolutions());
+    try {
+      solution = Solutions.bestOf(algorithm.searchSolutions());
+    } finally {
+      executor.shutdown();
+    }
+    if (termination.reason() != null) {
+      System.out.println("Stopped after " + termination.completedIterations() + " iterations, " + termination.reason());
+    }
     System.out.println("Solution found after " + Duration.between(timeBeforeSolve, Instant.now()).toSeconds() + " seconds, skipped " + solution.getUnassignedJobs().size() + " jobs");
   }
 
+  public void setSolveLimits(SolveLimits solveLimits) {
+    this.solveLimits = solveLimits;
+  }
+
+  public void setVehicleCapacity(int vehicleCapacity) {
+    this.vehicleCapacity = vehicleCapacity;
+  }
+
+  public void setThreads(int threads) {
+    this.threads = threads;
+  }
+
+  // fixes the parcel sampling of init and the search of solve
+  public void setSeed(long seed) {
+    this.seed = seed;
+  }
+
+  public VehicleRoutingProblemSolution getSolution() {
+    return solution;
+  }
+
+  // routes of an earlier bake, matched to the current jobs and used as the starting solution
+  public void setInitialRoutes(List<Route> initialRoutes) {
+    this.initialRoutes = initialRoutes;
+  }
+
   public void writeRouteXML(File targetFile, String carrierName, String carrierColor, String emissionClass) {
     if (solution == null) {
       throw new IllegalStateException("No solution available");
     }
 
-    List<Route> routes = new ArrayList<>();
-
     System.out.println("Writing " + carrierName + " routes to " + targetFile.getAbsolutePath());
 
+    StopSnaps snaps = StopSnaps.of(solution.getRoutes(), "passenger");
+    System.out.println("Snapped " + snaps.size() + " distinct stop locations");
+
     Random rand = new Random();
     int numRoute = 0;
     int totalVehicleCount = solution.getRoutes().size();
 
-    for (VehicleRoute vhRoute : solution.getRoutes()) {
-      System.out.println("Vehicle " + (numRoute+1) + " of " + totalVehicleCount + " has " + vhRoute.getTourActivities().getJobs().size() + " stops");
-      List<Stop> stops = new ArrayList<>();
-      List<String> edges = new ArrayList<>();
-      edges.add(ENTRY_EDGE);
-      for (TourActivity activity : vhRoute.getActivities()) {
-        Coordinate stopCoords = activity.getLocation().getCoordinate();
-        TraCIRoadPosition roadPos = Simulation.convertRoad(stopCoords.getX(), stopCoords.getY(), true, "passenger");
-
-        edges.add(roadPos.getEdgeID());
-        // 90% chance for "parking" (allowing other vehicles to pass)
-
-        // https://medium.com/the-post-grad-survival-guide/to-jeff-bezos-from-an-amazon-delivery-driver-5ccf39d5df7d
-        int packets = activity.getSize().get(0);
-        boolean willBeHome = ThreadLocalRandom.current().nextDouble() <= 0.95;
-        int findParkingTime = (int) (ThreadLocalRandom.current().nextExponential() * 12);// 0-60 seconds
-        int approachTime = (int) (ThreadLocalRandom.current().nextGaussian(30, 10));// 20-40 seconds
-        int singleStairTime = (int) (ThreadLocalRandom.current().nextGaussian(15 + packets*2.5d, 5));// 15-25 seconds
-        int stairs = ThreadLocalRandom.current().nextDouble() < 0.4 ? 0 : (ThreadLocalRandom.current().nextInt(1, 6));
-        int stairTime = stairs * singleStairTime;
-        int waitingTime = (int) (ThreadLocalRandom.current().nextGaussian(willBeHome ? 20 : 120, 10));// 20-40 seconds
-        int loadUnloadTime = (int) (ThreadLocalRandom.current().nextGaussian(60 + packets*20, 20));// 40-80 seconds
-        int totalDuration = findParkingTime + 2 * approachTime + 2 * stairTime + waitingTime + loadUnloadTime;
-        stops.add(new Stop(roadPos.getEdgeID(), roadPos.getPos(), totalDuration, rand.nextDouble() <= 0.8));
-      }
-      edges.add(EXIT_EDGE);
-      Route route = new Route("delivery_" + carrierName + "_" + numRoute, edges, stops);
-      routes.add(route);
-      numRoute++;
-    }
-
-    System.out.println("Done computing routes, writing to file...");
-
-    try (BufferedWriter writer = new BufferedWriter(new FileWriter(targetFile))) {
-      writer.write("<routes>");
-      writer.newLine();
-      writer.write("    <vType id=\"delivery_" + carrierName + "\" vClass=\"delivery\" color=\"" + carrierColor + "\">");
-      writer.newLine();
-      writer.write("        <param key=\"has.emissions.device\" value=\"true\"/>");
-      writer.newLine();
-      writer.write("        <param key=\"emissionClass\" value=\"HBEFA4/" + emissionClass + "\"/>");
-      writer.newLine();
-      writer.write("    </vType>");
-      writer.newLine();
-      for (Route route : routes) {
-        route.writeXML(writer, "delivery_" + carrierName);
-        writer.newLine();
+    // each route is written as soon as it is built, only one is held at a time
+    try (RouteXmlWriter writer = new RouteXmlWriter(targetFile)) {
+      writer.vehicleType("delivery_" + carrierName, "delivery", carrierColor, "HBEFA4/" + emissionClass);
+      for (VehicleRoute vhRoute : solution.getRoutes()) {
+        System.out.println("Vehicle " + (numRoute+1) + " of " + totalVehicleCount + " has " + vhRoute.getTourActivities().getJobs().size() + " stops");
+        List<Stop> stops = new ArrayList<>();
+        List<String> edges = new ArrayList<>();
+        edges.add(ENTRY_EDGE);
+        for (TourActivity activity : vhRoute.getActivities()) {
+          RoadPosition roadPos = snaps.get(activity.getLocation());
+
+          edges.add(roadPos.edgeId());
+          // 90% chance for "parking" (allowing other vehicles to pass)
+
+          // https://medium.com/the-post-grad-survival-guide/to-jeff-bezos-from-an-amazon-delivery-driver-5ccf39d5df7d
+          int packets = activity.getSize().get(0);
+          boolean willBeHome = ThreadLocalRandom.current().nextDouble() <= 0.95;
+          int findParkingTime = (int) (ThreadLocalRandom.current().nextExponential() * 12);// 0-60 seconds
+          int approachTime = (int) (ThreadLocalRandom.current().nextGaussian(30, 10));// 20-40 seconds
+          int singleStairTime = (int) (ThreadLocalRandom.current().nextGaussian(15 + packets*2.5d, 5));// 15-25 seconds
+          int stairs = ThreadLocalRandom.current().nextDouble() < 0.4 ? 0 : (ThreadLocalRandom.current().nextInt(1, 6));
+          int stairTime = stairs * singleStairTime;
+          int waitingTime = (int) (ThreadLocalRandom.current().nextGaussian(willBeHome ? 20 : 120, 10));// 20-40 seconds
+          int loadUnloadTime = (int) (ThreadLocalRandom.current().nextGaussian(60 + packets*20, 20));// 40-80 seconds
+          int totalDuration = findParkingTime + 2 * approachTime + 2 * stairTime + waitingTime + loadUnloadTime;
+          stops.add(new Stop(roadPos.edgeId(), roadPos.pos(), totalDuration, rand.nextDouble() <= 0.8));
+        }
+        edges.add(EXIT_EDGE);
+        writer.trip(new Route("delivery_" + carrierName + "_" + numRoute, edges, stops), "delivery_" + carrierName);
+        numRoute++;
       }
-      writer.write("</routes>");
     } catch (IOException e) {
       e.printStackTrace();
     }
@@ -203,22 +248,7 @@ public class TruckDeliveryProblem {
   }
 
   public Map<OsmNode, Integer> clusterDemand(Map<OsmNode, Integer> demandMap) {
-    Map<OsmNode, Integer> clusteredDemand = new HashMap<>(demandMap);
-    for (OsmNode location : demandMap.keySet()) {
-      if (!clusteredDemand.containsKey(location) || clusteredDemand.get(location) >= 10) {
-        continue;
-      }
-      for (OsmNode otherLocation : demandMap.keySet()) {
-        if (location == otherLocation) {
-          continue;
-        }
-        if (location.distanceMetersL2(otherLocation) < 20) {
-          clusteredDemand.put(location, clusteredDemand.get(location) + demandMap.get(otherLocation));
-          clusteredDemand.remove(otherLocation);
-        }
-      }
-    }
-    return clusteredDemand;
+    return DemandClustering.cluster(demandMap, CLUSTER_RADIUS_METERS);
   }
 
 }
@@ -0,0 +1,110 @@
+package de.tum.logistics.problems;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.graphhopper.jsprit.core.problem.VehicleRoutingProblem;
+import com.graphhopper.jsprit.core.problem.job.Job;
+import com.graphhopper.jsprit.core.problem.job.Service;
+import com.graphhopper.jsprit.core.problem.solution.SolutionCostCalculator;
+import com.graphhopper.jsprit.core.problem.solution.VehicleRoutingProblemSolution;
+import com.graphhopper.jsprit.core.problem.solution.route.VehicleRoute;
+import com.graphhopper.jsprit.core.problem.vehicle.Vehicle;
+import com.graphhopper.jsprit.core.util.Coordinate;
+import de.tum.logistics.osm.OsmNode;
+import de.tum.logistics.problems.serialization.Route;
+import de.tum.logistics.problems.serialization.Stop;
+import de.tum.logistics.routing.RoadPosition;
+
+// Turns routes of an earlier bake into an initial jsprit solution. Stops are matched to the jobs of the current
+// problem by their snapped edge and the closest position on it; jobs without a matching stop stay unassigned and are
+// inserted by the first recreate step.
+final class WarmStart {
+  // a route with fewer matched stops most likely served a different problem, e.g. another micro hub
+  private static final double MIN_MATCHED_SHARE = 0.5;
+
+  private record Candidate(Service service, String edgeId, double pos) {}
+
+  private WarmStart() {
+  }
+
+  static VehicleRoutingProblemSolution initialSolution(VehicleRoutingProblem vrp, List<Route> routes, String vehicleClass,
+                                                       SolutionCostCalculator objective) {
+    Map<String, List<Candidate>> candidatesByEdge = new HashMap<>();
+    for (Job job : vrp.getJobs().values()) {
+      if (job instanceof Service service) {
+        Coordinate coordinate = service.getLocation().getCoordinate();
+        RoadPosition position = OsmNode.snapCache().snap(coordinate.getX(), coordinate.getY(), vehicleClass);
+        candidatesByEdge.computeIfAbsent(position.edgeId(), edge -> new ArrayList<>()).add(new Candidate(service, position.edgeId(), position.pos()));
+      }
+    }
+
+    List<Vehicle> vehicles = new ArrayList<>(vrp.getVehicles());
+    vehicles.sort(Comparator.comparing(Vehicle::getId));
+    Set<Job> assigned = new LinkedHashSet<>();
+    List<VehicleRoute> vehicleRoutes = new ArrayList<>();
+    for (Route route : routes) {
+      if (vehicleRoutes.size() == vehicles.size()) {
+        break;
+      }
+      List<Candidate> matched = new ArrayList<>();
+      for (Stop stop : route.stops()) {
+        Candidate candidate = takeClosest(candidatesByEdge.get(stop.edgeId()), stop.positionOnEdge());
+        if (candidate != null) {
+          matched.add(candidate);
+        }
+      }
+      if (matched.isEmpty() || matched.size() < route.stops().size() * MIN_MATCHED_SHARE) {
+        // give the jobs back so that another route can claim them
+        for (Candidate candidate : matched) {
+          candidatesByEdge.get(candidate.edgeId()).add(candidate);
+        }
+        continue;
+      }
+      Vehicle vehicle = vehicles.get(vehicleRoutes.size());
+      int capacity = vehicle.getType().getCapacityDimensions().get(0);
+      int load = 0;
+      VehicleRoute.Builder builder = VehicleRoute.Builder.newInstance(vehicle).setJobActivityFactory(vrp.getJobActivityFactory());
+      for (Candidate candidate : matched) {
+        Service service = candidate.service();
+        // demand may have grown since the earlier bake, overflowing jobs are left to the solver
+        if (load + service.getSize().get(0) > capacity) {
+          continue;
+        }
+        load += service.getSize().get(0);
+        builder.addService(service);
+        assigned.add(service);
+      }
+      vehicleRoutes.add(builder.build());
+    }
+
+    List<Job> unassigned = new ArrayList<>();
+    for (Job job : vrp.getJobs().values()) {
+      if (!assigned.contains(job)) {
+        unassigned.add(job);
+      }
+    }
+    VehicleRoutingProblemSolution solution = new VehicleRoutingProblemSolution(vehicleRoutes, unassigned, 0);
+    solution.setCost(objective.getCosts(solution));
+    System.out.println("Warm start assigns " + assigned.size() + " of " + vrp.getJobs().size() + " jobs to " + vehicleRoutes.size() + " routes");
+    return solution;
+  }
+
+  private static Candidate takeClosest(List<Candidate> candidates, double pos) {
+    if (candidates == null || candidates.isEmpty()) {
+      return null;
+    }
+    int closest = 0;
+    for (int i = 1; i < candidates.size(); i++) {
+      if (Math.abs(candidates.get(i).pos() - pos) < Math.abs(candidates.get(closest).pos() - pos)) {
+        closest = i;
+      }
+    }
+    return candidates.remove(closest);
+  }
+}
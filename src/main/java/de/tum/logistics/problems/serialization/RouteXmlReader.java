@@ -0,0 +1,57 @@
+package de.tum.logistics.problems.serialization;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+// Reads the trips of a routes file written by writeRouteXML back into routes, edges only hold from and to
+public class RouteXmlReader {
+
+  public static List<Route> read(File routesFile) {
+    if (!routesFile.exists()) {
+      return Collections.emptyList();
+    }
+    try (InputStream in = new BufferedInputStream(new FileInputStream(routesFile))) {
+      InputStream xml = routesFile.getName().endsWith(".gz") ? new GZIPInputStream(in) : in;
+      XMLStreamReader reader = XMLInputFactory.newFactory().createXMLStreamReader(xml);
+      List<Route> routes = new ArrayList<>();
+      String tripId = null;
+      List<String> edges = null;
+      List<Stop> stops = null;
+      while (reader.hasNext()) {
+        int event = reader.next();
+        if (event == XMLStreamConstants.START_ELEMENT && reader.getLocalName().equals("trip")) {
+          tripId = reader.getAttributeValue(null, "id");
+          edges = List.of(reader.getAttributeValue(null, "from"), reader.getAttributeValue(null, "to"));
+          stops = new ArrayList<>();
+        } else if (event == XMLStreamConstants.START_ELEMENT && reader.getLocalName().equals("stop") && stops != null) {
+          stops.add(new Stop(reader.getAttributeValue(null, "edge"),
+              Double.parseDouble(reader.getAttributeValue(null, "endPos")),
+              Double.parseDouble(reader.getAttributeValue(null, "duration")),
+              Boolean.parseBoolean(reader.getAttributeValue(null, "parking"))));
+        } else if (event == XMLStreamConstants.END_ELEMENT && reader.getLocalName().equals("trip")) {
+          routes.add(new Route(tripId, edges, stops));
+          stops = null;
+        }
+      }
+      reader.close();
+      return routes;
+    } catch (IOException | XMLStreamException | RuntimeException e) {
+      System.err.println("Could not read routes from " + routesFile + ", solving from scratch");
+      e.printStackTrace();
+      return Collections.emptyList();
+    }
+  }
+
+}
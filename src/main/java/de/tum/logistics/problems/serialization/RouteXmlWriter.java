@@ -0,0 +1,123 @@
+package de.tum.logistics.problems.serialization;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.GZIPOutputStream;
+
+// Streams routes to a sumo routes file, one trip at a time, gzip compressed for files ending in .gz. Numbers are
+// written with at most two decimals through a reused char buffer instead of Double.toString, sumo itself does not
+// resolve positions or durations any finer.
+public final class RouteXmlWriter implements AutoCloseable {
+  private static final String DEPART = "01:00:00";
+  private static final int DECIMALS = 2;
+  private static final long SCALE = 100;
+
+  private final BufferedWriter writer;
+  private final char[] number = new char[24];
+  private int tripCount;
+
+  public RouteXmlWriter(File targetFile) throws IOException {
+    OutputStream out = new FileOutputStream(targetFile);
+    if (targetFile.getName().endsWith(".gz")) {
+      out = new GZIPOutputStream(out, 1 << 16);
+    }
+    writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8), 1 << 16);
+    writer.write("<routes>");
+    writer.newLine();
+  }
+
+  // emissionClass may be null for vehicles without an emissions device
+  public void vehicleType(String id, String vehicleClass, String color, String emissionClass) throws IOException {
+    writer.write("    <vType id=\"");
+    writer.write(id);
+    writer.write("\" vClass=\"");
+    writer.write(vehicleClass);
+    writer.write("\" color=\"");
+    writer.write(color);
+    if (emissionClass == null) {
+      writer.write("\"/>");
+      writer.newLine();
+      return;
+    }
+    writer.write("\">");
+    writer.newLine();
+    writer.write("        <param key=\"has.emissions.device\" value=\"true\"/>");
+    writer.newLine();
+    writer.write("        <param key=\"emissionClass\" value=\"");
+    writer.write(emissionClass);
+    writer.write("\"/>");
+    writer.newLine();
+    writer.write("    </vType>");
+    writer.newLine();
+  }
+
+  public void trip(Route route, String vehicleType) throws IOException {
+    writer.write("    <trip id=\"");
+    writer.write(route.id());
+    writer.write("\" type=\"");
+    writer.write(vehicleType);
+    writer.write("\" from=\"");
+    writer.write(route.edges().getFirst());
+    writer.write("\" to=\"");
+    writer.write(route.edges().getLast());
+    writer.write("\" depart=\"" + DEPART + "\">");
+    writer.newLine();
+    for (Stop stop : route.stops()) {
+      writer.write("        <stop edge=\"");
+      writer.write(stop.edgeId());
+      writer.write("\" endPos=\"");
+      writeNumber(stop.positionOnEdge());
+      writer.write("\" duration=\"");
+      writeNumber(stop.duration());
+      writer.write(stop.usesParking() ? "\" parking=\"true\"/>" : "\" parking=\"false\"/>");
+      writer.newLine();
+    }
+    writer.write("    </trip>");
+    writer.newLine();
+    tripCount++;
+  }
+
+  public int tripCount() {
+    return tripCount;
+  }
+
+  // fills the buffer from the back, trailing zeros of the fraction are dropped
+  private void writeNumber(double value) throws IOException {
+    long scaled = Math.round(Math.abs(value) * SCALE);
+    long integer = scaled / SCALE;
+    long fraction = scaled % SCALE;
+    int pos = number.length;
+    if (fraction != 0) {
+      int digits = DECIMALS;
+      while (fraction % 10 == 0) {
+        fraction /= 10;
+        digits--;
+      }
+      for (int i = 0; i < digits; i++) {
+        number[--pos] = (char) ('0' + fraction % 10);
+        fraction /= 10;
+      }
+      number[--pos] = '.';
+    }
+    do {
+      number[--pos] = (char) ('0' + integer % 10);
+      integer /= 10;
+    } while (integer != 0);
+    if (value < 0 && scaled != 0) {
+      number[--pos] = '-';
+    }
+    writer.write(number, pos, number.length - pos);
+  }
+
+  @Override
+  public void close() throws IOException {
+    writer.write("</routes>");
+    writer.newLine();
+    writer.close();
+  }
+}
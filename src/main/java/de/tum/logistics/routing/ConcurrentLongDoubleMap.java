@@ -0,0 +1,151 @@
+package de.tum.logistics.routing;
+
+import java.util.Arrays;
+import java.util.concurrent.locks.StampedLock;
+
+// Striped open-addressing map from non-negative long keys to doubles, lookups neither lock nor allocate
+public final class ConcurrentLongDoubleMap {
+  private static final long EMPTY_KEY = -1L;
+  private static final int SEGMENT_COUNT = 64;
+
+  private final Segment[] segments = new Segment[SEGMENT_COUNT];
+
+  public ConcurrentLongDoubleMap() {
+    for (int i = 0; i < SEGMENT_COUNT; i++) {
+      segments[i] = new Segment();
+    }
+  }
+
+  // returns NaN if the key is not present
+  public double get(long key) {
+    long hash = mix(key);
+    return segments[(int) (hash >>> 58)].get(key, hash);
+  }
+
+  public void put(long key, double value) {
+    if (key < 0) {
+      throw new IllegalArgumentException("Negative keys are not supported");
+    }
+    long hash = mix(key);
+    segments[(int) (hash >>> 58)].put(key, value, hash);
+  }
+
+  public int size() {
+    int size = 0;
+    for (Segment segment : segments) {
+      size += segment.size;
+    }
+    return size;
+  }
+
+  // all keys present at the time of the call, in ascending order
+  public long[] sortedKeys() {
+    long[] keys = new long[16];
+    int count = 0;
+    for (Segment segment : segments) {
+      long stamp = segment.lock.readLock();
+      try {
+        long[] table = segment.table;
+        for (int i = 0; i < table.length; i += 2) {
+          if (table[i] != EMPTY_KEY) {
+            if (count == keys.length) {
+              keys = Arrays.copyOf(keys, count * 2);
+            }
+            keys[count++] = table[i];
+          }
+        }
+      } finally {
+        segment.lock.unlockRead(stamp);
+      }
+    }
+    keys = Arrays.copyOf(keys, count);
+    Arrays.sort(keys);
+    return keys;
+  }
+
+  private static long mix(long key) {
+    key = (key ^ (key >>> 33)) * 0xff51afd7ed558ccdL;
+    key = (key ^ (key >>> 33)) * 0xc4ceb9fe1a85ec53L;
+    return key ^ (key >>> 33);
+  }
+
+  // keys and value bits are interleaved in one array so a reader always sees a consistent table reference
+  private static final class Segment {
+    private final StampedLock lock = new StampedLock();
+    private volatile long[] table = emptyTable(16);
+    private int size = 0;
+
+    private static long[] emptyTable(int capacity) {
+      long[] table = new long[capacity * 2];
+      for (int i = 0; i < table.length; i += 2) {
+        table[i] = EMPTY_KEY;
+      }
+      return table;
+    }
+
+    private double get(long key, long hash) {
+      long stamp = lock.tryOptimisticRead();
+      double value = find(table, key, hash);
+      if (!lock.validate(stamp)) {
+        stamp = lock.readLock();
+        try {
+          value = find(table, key, hash);
+        } finally {
+          lock.unlockRead(stamp);
+        }
+      }
+      return value;
+    }
+
+    private static double find(long[] table, long key, long hash) {
+      int mask = (table.length >>> 1) - 1;
+      for (int slot = (int) hash & mask; ; slot = (slot + 1) & mask) {
+        long slotKey = table[slot * 2];
+        if (slotKey == key) {
+          return Double.longBitsToDouble(table[slot * 2 + 1]);
+        }
+        if (slotKey == EMPTY_KEY) {
+          return Double.NaN;
+        }
+      }
+    }
+
+    private void put(long key, double value, long hash) {
+      long stamp = lock.writeLock();
+      try {
+        long[] current = table;
+        if ((size + 1) * 2 > current.length >>> 1) {
+          current = resize(current);
+        }
+        if (insert(current, key, value, hash)) {
+          size++;
+        }
+        table = current;
+      } finally {
+        lock.unlockWrite(stamp);
+      }
+    }
+
+    private static boolean insert(long[] table, long key, double value, long hash) {
+      int mask = (table.length >>> 1) - 1;
+      for (int slot = (int) hash & mask; ; slot = (slot + 1) & mask) {
+        long slotKey = table[slot * 2];
+        if (slotKey == EMPTY_KEY || slotKey == key) {
+          table[slot * 2 + 1] = Double.doubleToRawLongBits(value);
+          table[slot * 2] = key;
+          return slotKey == EMPTY_KEY;
+        }
+      }
+    }
+
+    private static long[] resize(long[] current) {
+      long[] resized = emptyTable(current.length);
+      for (int i = 0; i < current.length; i += 2) {
+        if (current[i] != EMPTY_KEY) {
+          insert(resized, current[i], Double.longBitsToDouble(current[i + 1]), mix(current[i]));
+        }
+      }
+      return resized;
+    }
+  }
+}
@@ -0,0 +1,414 @@
+package de.tum.logistics.routing;
+
+import java.io.*;
+import java.util.Arrays;
+import java.util.PriorityQueue;
+
+import me.tongfei.progressbar.ProgressBar;
+import me.tongfei.progressbar.ProgressBarBuilder;
+
+// Contraction hierarchy over an undirected RoadGraph, only the upward graph is kept for queries
+public final class ContractionHierarchy implements RoutingEngine {
+  private static final int FILE_MAGIC = 0x4C4D4C43;
+  private static final int FILE_VERSION = 1;
+  private static final int WITNESS_SETTLE_LIMIT = 500;
+  private static final int PRIORITY_SETTLE_LIMIT = 50;
+
+  private final long graphFingerprint;
+  private final int[] firstArc;
+  private final int[] arcTarget;
+  private final double[] arcWeight;
+  private final ThreadLocal<SearchWorkspace[]> workspaces;
+
+  private ContractionHierarchy(long graphFingerprint, int[] firstArc, int[] arcTarget, double[] arcWeight) {
+    this.graphFingerprint = graphFingerprint;
+    this.firstArc = firstArc;
+    this.arcTarget = arcTarget;
+    this.arcWeight = arcWeight;
+    int vertexCount = firstArc.length - 1;
+    this.workspaces = ThreadLocal.withInitial(() -> new SearchWorkspace[]{
+        new SearchWorkspace(vertexCount), new SearchWorkspace(vertexCount)
+    });
+  }
+
+  public static ContractionHierarchy loadOrBuild(RoadGraph graph, File file) {
+    if (file.exists()) {
+      try {
+        ContractionHierarchy hierarchy = load(file);
+        if (hierarchy.graphFingerprint == graph.fingerprint()) {
+          System.out.println("Loaded contraction hierarchy from " + file.getAbsolutePath());
+          return hierarchy;
+        }
+        System.out.println("Contraction hierarchy at " + file.getAbsolutePath() + " is stale, rebuilding");
+      } catch (IOException e) {
+        System.out.println("Could not read contraction hierarchy at " + file.getAbsolutePath() + ": " + e.getMessage());
+      }
+    }
+    ContractionHierarchy hierarchy = build(graph);
+    try {
+      hierarchy.save(file);
+    } catch (IOException e) {
+      e.printStackTrace();
+    }
+    return hierarchy;
+  }
+
+  public static ContractionHierarchy build(RoadGraph graph) {
+    return new Contractor(graph).contract();
+  }
+
+  public static ContractionHierarchy load(File file) throws IOException {
+    try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+      if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+        throw new IOException("Not a contraction hierarchy file");
+      }
+      long fingerprint = in.readLong();
+      int[] firstArc = new int[in.readInt()];
+      for (int i = 0; i < firstArc.length; i++) {
+        firstArc[i] = in.readInt();
+      }
+      int arcCount = firstArc[firstArc.length - 1];
+      int[] arcTarget = new int[arcCount];
+      double[] arcWeight = new double[arcCount];
+      for (int i = 0; i < arcCount; i++) {
+        arcTarget[i] = in.readInt();
+        arcWeight[i] = in.readDouble();
+      }
+      return new ContractionHierarchy(fingerprint, firstArc, arcTarget, arcWeight);
+    }
+  }
+
+  public void save(File file) throws IOException {
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)))) {
+      out.writeInt(FILE_MAGIC);
+      out.writeInt(FILE_VERSION);
+      out.writeLong(graphFingerprint);
+      out.writeInt(firstArc.length);
+      for (int arc : firstArc) {
+        out.writeInt(arc);
+      }
+      for (int i = 0; i < arcTarget.length; i++) {
+        out.writeInt(arcTarget[i]);
+        out.writeDouble(arcWeight[i]);
+      }
+    }
+  }
+
+  @Override
+  public double distance(int[] sources, int[] targets) {
+    SearchWorkspace[] ws = workspaces.get();
+    SearchWorkspace forward = ws[0];
+    SearchWorkspace backward = ws[1];
+    upwardSearch(forward, sources, Double.POSITIVE_INFINITY);
+    backward.reset();
+    for (int target : targets) {
+      backward.relax(target, 0);
+    }
+    double best = Double.POSITIVE_INFINITY;
+    while (!backward.isEmpty() && backward.peekKey() < best) {
+      double distance = backward.peekKey();
+      int vertex = backward.pop();
+      if (backward.isSettled(vertex)) {
+        continue;
+      }
+      backward.settle(vertex);
+      if (isStalled(backward, vertex, distance)) {
+        continue;
+      }
+      best = Math.min(best, distance + forward.distanceTo(vertex));
+      relaxUpward(backward, vertex, distance);
+    }
+    return best;
+  }
+
+  @Override
+  public ManyToMany manyToMany(int[] targets) {
+    // backward search spaces of all targets, stored as buckets per meeting vertex
+    int vertexCount = firstArc.length - 1;
+    int[][] bucketTargets = new int[vertexCount][];
+    double[][] bucketDistances = new double[vertexCount][];
+    int[] bucketSizes = new int[vertexCount];
+    SearchWorkspace ws = workspaces.get()[1];
+    for (int t = 0; t < targets.length; t++) {
+      ws.reset();
+      ws.relax(targets[t], 0);
+      while (!ws.isEmpty()) {
+        double distance = ws.peekKey();
+        int vertex = ws.pop();
+        if (ws.isSettled(vertex)) {
+          continue;
+        }
+        ws.settle(vertex);
+        if (isStalled(ws, vertex, distance)) {
+          continue;
+        }
+        int size = bucketSizes[vertex]++;
+        if (bucketTargets[vertex] == null) {
+          bucketTargets[vertex] = new int[4];
+          bucketDistances[vertex] = new double[4];
+        } else if (size == bucketTargets[vertex].length) {
+          bucketTargets[vertex] = Arrays.copyOf(bucketTargets[vertex], size * 2);
+          bucketDistances[vertex] = Arrays.copyOf(bucketDistances[vertex], size * 2);
+        }
+        bucketTargets[vertex][size] = t;
+        bucketDistances[vertex][size] = distance;
+        relaxUpward(ws, vertex, distance);
+      }
+    }
+    return sources -> {
+      double[] result = new double[targets.length];
+      Arrays.fill(result, Double.POSITIVE_INFINITY);
+      SearchWorkspace forward = workspaces.get()[0];
+      forward.reset();
+      for (int source : sources) {
+        forward.relax(source, 0);
+      }
+      while (!forward.isEmpty()) {
+        double distance = forward.peekKey();
+        int vertex = forward.pop();
+        if (forward.isSettled(vertex)) {
+          continue;
+        }
+        forward.settle(vertex);
+        if (isStalled(forward, vertex, distance)) {
+          continue;
+        }
+        for (int i = 0; i < bucketSizes[vertex]; i++) {
+          int target = bucketTargets[vertex][i];
+          result[target] = Math.min(result[target], distance + bucketDistances[vertex][i]);
+        }
+        relaxUpward(forward, vertex, distance);
+      }
+      return result;
+    };
+  }
+
+  private void upwardSearch(SearchWorkspace ws, int[] sources, double maxDistance) {
+    ws.reset();
+    for (int source : sources) {
+      ws.relax(source, 0);
+    }
+    while (!ws.isEmpty() && ws.peekKey() <= maxDistance) {
+      double distance = ws.peekKey();
+      int vertex = ws.pop();
+      if (ws.isSettled(vertex)) {
+        continue;
+      }
+      ws.settle(vertex);
+      if (!isStalled(ws, vertex, distance)) {
+        relaxUpward(ws, vertex, distance);
+      }
+    }
+  }
+
+  // stall-on-demand, a vertex reached suboptimally through a higher ranked neighbor cannot be on a shortest path
+  private boolean isStalled(SearchWorkspace ws, int vertex, double distance) {
+    for (int arc = firstArc[vertex]; arc < firstArc[vertex + 1]; arc++) {
+      if (ws.distanceTo(arcTarget[arc]) + arcWeight[arc] < distance) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  private void relaxUpward(SearchWorkspace ws, int vertex, double distance) {
+    for (int arc = firstArc[vertex]; arc < firstArc[vertex + 1]; arc++) {
+      ws.relax(arcTarget[arc], distance + arcWeight[arc]);
+    }
+  }
+
+  // Contracts vertices in lazily updated edge-difference order and records the upward arcs of each vertex
+  private static final class Contractor {
+    private final RoadGraph graph;
+    private final int vertexCount;
+    private final int[][] neighbors;
+    private final double[][] weights;
+    private final int[] degree;
+    private final int[] deletedNeighbors;
+    private final int[] priorities;
+    private final int[] levels;
+    private final int[][] upwardTargets;
+    private final double[][] upwardWeights;
+    private final SearchWorkspace witness;
+    private int[] pendingFrom = new int[64];
+    private int[] pendingTo = new int[64];
+    private double[] pendingWeight = new double[64];
+    private int pendingCount = 0;
+
+    private Contractor(RoadGraph graph) {
+      this.graph = graph;
+      this.vertexCount = graph.vertexCount();
+      this.neighbors = new int[vertexCount][];
+      this.weights = new double[vertexCount][];
+      this.degree = new int[vertexCount];
+      this.deletedNeighbors = new int[vertexCount];
+      this.priorities = new int[vertexCount];
+      this.levels = new int[vertexCount];
+      this.upwardTargets = new int[vertexCount][];
+      this.upwardWeights = new double[vertexCount][];
+      this.witness = new SearchWorkspace(vertexCount);
+      for (int v = 0; v < vertexCount; v++) {
+        int arcs = graph.endArc(v) - graph.firstArc(v);
+        neighbors[v] = new int[Math.max(arcs, 1)];
+        weights[v] = new double[Math.max(arcs, 1)];
+        for (int arc = graph.firstArc(v); arc < graph.endArc(v); arc++) {
+          addOrLower(v, graph.arcTarget(arc), graph.arcWeight(arc));
+        }
+      }
+    }
+
+    private ContractionHierarchy contract() {
+      PriorityQueue<Long> queue = new PriorityQueue<>();
+      for (int v = 0; v < vertexCount; v++) {
+        priorities[v] = priority(v);
+        queue.add(queueEntry(priorities[v], v));
+      }
+      ProgressBar pb = new ProgressBarBuilder().setInitialMax(vertexCount).setTaskName("Contracting road graph").build();
+      while (!queue.isEmpty()) {
+        long entry = queue.poll();
+        int vertex = (int) (entry & 0xFFFFFFFFL);
+        if (upwardTargets[vertex] != null || entry != queueEntry(priorities[vertex], vertex)) {
+          continue;
+        }
+        // lazy update, the neighborhood may have changed since the priority was computed
+        priorities[vertex] = priority(vertex);
+        if (!queue.isEmpty() && queueEntry(priorities[vertex], vertex) > queue.peek()) {
+          queue.add(queueEntry(priorities[vertex], vertex));
+          continue;
+        }
+        int[] affected = Arrays.copyOf(neighbors[vertex], degree[vertex]);
+        contractVertex(vertex);
+        for (int neighbor : affected) {
+          priorities[neighbor] = priority(neighbor);
+          queue.add(queueEntry(priorities[neighbor], neighbor));
+        }
+        pb.step();
+      }
+      pb.close();
+
+      int[] firstArc = new int[vertexCount + 1];
+      for (int v = 0; v < vertexCount; v++) {
+        firstArc[v + 1] = firstArc[v] + upwardTargets[v].length;
+      }
+      int[] arcTarget = new int[firstArc[vertexCount]];
+      double[] arcWeight = new double[firstArc[vertexCount]];
+      for (int v = 0; v < vertexCount; v++) {
+        System.arraycopy(upwardTargets[v], 0, arcTarget, firstArc[v], upwardTargets[v].length);
+        System.arraycopy(upwardWeights[v], 0, arcWeight, firstArc[v], upwardWeights[v].length);
+      }
+      System.out.println("Contraction hierarchy contains " + arcTarget.length + " upward arcs over " + vertexCount + " junctions");
+      return new ContractionHierarchy(graph.fingerprint(), firstArc, arcTarget, arcWeight);
+    }
+
+    private static long queueEntry(int priority, int vertex) {
+      return ((long) priority + Integer.MAX_VALUE) << 32 | vertex;
+    }
+
+    private int priority(int vertex) {
+      return 2 * (findShortcuts(vertex, PRIORITY_SETTLE_LIMIT) - degree[vertex]) + deletedNeighbors[vertex] + levels[vertex];
+    }
+
+    private void contractVertex(int vertex) {
+      findShortcuts(vertex, WITNESS_SETTLE_LIMIT);
+      for (int i = 0; i < pendingCount; i++) {
+        addOrLower(pendingFrom[i], pendingTo[i], pendingWeight[i]);
+        addOrLower(pendingTo[i], pendingFrom[i], pendingWeight[i]);
+      }
+      upwardTargets[vertex] = Arrays.copyOf(neighbors[vertex], degree[vertex]);
+      upwardWeights[vertex] = Arrays.copyOf(weights[vertex], degree[vertex]);
+      for (int i = 0; i < degree[vertex]; i++) {
+        int neighbor = neighbors[vertex][i];
+        remove(neighbor, vertex);
+        deletedNeighbors[neighbor]++;
+        levels[neighbor] = Math.max(levels[neighbor], levels[vertex] + 1);
+      }
+      neighbors[vertex] = null;
+      weights[vertex] = null;
+      degree[vertex] = 0;
+    }
+
+    // Collects the shortcuts required to contract the vertex into the pending list and returns their number
+    private int findShortcuts(int vertex, int settleLimit) {
+      pendingCount = 0;
+      int[] vertexNeighbors = neighbors[vertex];
+      double[] vertexWeights = weights[vertex];
+      int vertexDegree = degree[vertex];
+      double maxWeight = 0;
+      for (int i = 0; i < vertexDegree; i++) {
+        maxWeight = Math.max(maxWeight, vertexWeights[i]);
+      }
+      for (int i = 0; i < vertexDegree - 1; i++) {
+        int source = vertexNeighbors[i];
+        witnessSearch(source, vertex, vertexWeights[i] + maxWeight, settleLimit);
+        for (int j = i + 1; j < vertexDegree; j++) {
+          double viaDistance = vertexWeights[i] + vertexWeights[j];
+          if (witness.distanceTo(vertexNeighbors[j]) > viaDistance) {
+            addPending(source, vertexNeighbors[j], viaDistance);
+          }
+        }
+      }
+      return pendingCount;
+    }
+
+    private void witnessSearch(int source, int excluded, double maxDistance, int settleLimit) {
+      witness.reset();
+      witness.settle(excluded);
+      witness.relax(source, 0);
+      int settled = 0;
+      while (!witness.isEmpty() && settled < settleLimit && witness.peekKey() <= maxDistance) {
+        double distance = witness.peekKey();
+        int vertex = witness.pop();
+        if (witness.isSettled(vertex)) {
+          continue;
+        }
+        witness.settle(vertex);
+        settled++;
+        for (int i = 0; i < degree[vertex]; i++) {
+          int next = neighbors[vertex][i];
+          if (!witness.isSettled(next)) {
+            witness.relax(next, distance + weights[vertex][i]);
+          }
+        }
+      }
+    }
+
+    private void addPending(int from, int to, double weight) {
+      if (pendingCount == pendingFrom.length) {
+        pendingFrom = Arrays.copyOf(pendingFrom, pendingCount * 2);
+        pendingTo = Arrays.copyOf(pendingTo, pendingCount * 2);
+        pendingWeight = Arrays.copyOf(pendingWeight, pendingCount * 2);
+      }
+      pendingFrom[pendingCount] = from;
+      pendingTo[pendingCount] = to;
+      pendingWeight[pendingCount] = weight;
+      pendingCount++;
+    }
+
+    private void addOrLower(int vertex, int neighbor, double weight) {
+      for (int i = 0; i < degree[vertex]; i++) {
+        if (neighbors[vertex][i] == neighbor) {
+          weights[vertex][i] = Math.min(weights[vertex][i], weight);
+          return;
+        }
+      }
+      if (degree[vertex] == neighbors[vertex].length) {
+        neighbors[vertex] = Arrays.copyOf(neighbors[vertex], degree[vertex] * 2);
+        weights[vertex] = Arrays.copyOf(weights[vertex], degree[vertex] * 2);
+      }
+      neighbors[vertex][degree[vertex]] = neighbor;
+      weights[vertex][degree[vertex]] = weight;
+      degree[vertex]++;
+    }
+
+    private void remove(int vertex, int neighbor) {
+      for (int i = 0; i < degree[vertex]; i++) {
+        if (neighbors[vertex][i] == neighbor) {
+          degree[vertex]--;
+          neighbors[vertex][i] = neighbors[vertex][degree[vertex]];
+          weights[vertex][i] = weights[vertex][degree[vertex]];
+          return;
+        }
+      }
+    }
+  }
+}
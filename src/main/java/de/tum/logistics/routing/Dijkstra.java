@@ -0,0 +1,63 @@
+package de.tum.logistics.routing;
+
+public final class Dijkstra implements RoutingEngine {
+  private final RoadGraph graph;
+  private final ThreadLocal<SearchWorkspace> workspaces;
+
+  public Dijkstra(RoadGraph graph) {
+    this.graph = graph;
+    this.workspaces = ThreadLocal.withInitial(() -> new SearchWorkspace(graph.vertexCount()));
+  }
+
+  @Override
+  public double distance(int[] sources, int[] targets) {
+    double[] distances = distances(sources, targets);
+    double min = Double.POSITIVE_INFINITY;
+    for (double distance : distances) {
+      min = Math.min(min, distance);
+    }
+    return min;
+  }
+
+  @Override
+  public ManyToMany manyToMany(int[] targets) {
+    return sources -> distances(sources, targets);
+  }
+
+  // Distance from the closest source to every target, the search stops as soon as all targets are settled
+  public double[] distances(int[] sources, int[] targets) {
+    SearchWorkspace ws = workspaces.get();
+    ws.reset();
+    int remainingTargets = 0;
+    for (int target : targets) {
+      if (ws.mark(target)) {
+        remainingTargets++;
+      }
+    }
+    for (int source : sources) {
+      ws.relax(source, 0);
+    }
+    while (remainingTargets > 0 && !ws.isEmpty()) {
+      double distance = ws.peekKey();
+      int vertex = ws.pop();
+      if (ws.isSettled(vertex)) {
+        continue;
+      }
+      ws.settle(vertex);
+      if (ws.isMarked(vertex)) {
+        remainingTargets--;
+      }
+      for (int arc = graph.firstArc(vertex); arc < graph.endArc(vertex); arc++) {
+        int next = graph.arcTarget(arc);
+        if (!ws.isSettled(next)) {
+          ws.relax(next, distance + graph.arcWeight(arc));
+        }
+      }
+    }
+    double[] result = new double[targets.length];
+    for (int i = 0; i < targets.length; i++) {
+      result[i] = ws.distanceTo(targets[i]);
+    }
+    return result;
+  }
+}
@@ -0,0 +1,84 @@
+package de.tum.logistics.routing;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.stream.IntStream;
+
+import javax.xml.stream.XMLStreamException;
+
+import org.eclipse.sumo.libtraci.Simulation;
+import org.eclipse.sumo.libtraci.TraCIRoadPosition;
+
+// Snaps coordinates to the nearest edge, in-process through a LaneIndex once loaded and through TraCI otherwise
+public final class EdgeSnapper {
+  private static volatile LaneIndex laneIndex;
+
+  private EdgeSnapper() {
+  }
+
+  // keeps using TraCI if the net file cannot be indexed
+  public static void load(File netFile) {
+    try {
+      long start = System.currentTimeMillis();
+      laneIndex = LaneIndex.load(netFile);
+      System.out.println("Indexed " + laneIndex.laneCount() + " lanes in " + (System.currentTimeMillis() - start) + "ms");
+    } catch (IOException | XMLStreamException | RuntimeException e) {
+      System.err.println("Could not index lanes of " + netFile + ", snapping through TraCI");
+      e.printStackTrace();
+    }
+  }
+
+  public static RoadPosition snap(double longitude, double latitude, String vehicleClass) {
+    LaneIndex index = laneIndex;
+    RoadPosition position = index != null ? index.snap(longitude, latitude, vehicleClass) : null;
+    return position != null ? position : snapWithoutIndex(longitude, latitude, vehicleClass);
+  }
+
+  // snaps many coordinates at once, in parallel through the LaneIndex; coordinates it cannot snap fall back to the
+  // network cache and TraCI on the calling thread, as the TraCI connection must not be shared between threads
+  public static RoadPosition[] snapAll(double[] longitudes, double[] latitudes, String vehicleClass) {
+    RoadPosition[] positions = new RoadPosition[longitudes.length];
+    LaneIndex index = laneIndex;
+    if (index != null) {
+      IntStream.range(0, positions.length).parallel()
+          .forEach(i -> positions[i] = index.snap(longitudes[i], latitudes[i], vehicleClass));
+    }
+    for (int i = 0; i < positions.length; i++) {
+      if (positions[i] == null) {
+        positions[i] = snapWithoutIndex(longitudes[i], latitudes[i], vehicleClass);
+      }
+    }
+    return positions;
+  }
+
+  private static RoadPosition snapWithoutIndex(double longitude, double latitude, String vehicleClass) {
+    NetworkCache networkCache = NetworkCache.get(vehicleClass);
+    RoadPosition position = networkCache != null ? networkCache.snap(longitude, latitude) : null;
+    if (position == null) {
+      position = convertRoad(longitude, latitude, true, vehicleClass);
+      if (networkCache != null) {
+        networkCache.putSnap(longitude, latitude, position);
+      }
+    }
+    return position;
+  }
+
+  public static RoadPosition snapCartesian(double x, double y, String vehicleClass) {
+    LaneIndex index = laneIndex;
+    RoadPosition position = index != null ? index.snapCartesian(x, y, vehicleClass) : null;
+    return position != null ? position : convertRoad(x, y, false, vehicleClass);
+  }
+
+  // null if the LaneIndex is not loaded or cannot snap the point, never reaches TraCI, so any thread may call it
+  public static RoadPosition snapCartesianInProcess(double x, double y, String vehicleClass) {
+    LaneIndex index = laneIndex;
+    return index != null ? index.snapCartesian(x, y, vehicleClass) : null;
+  }
+
+  private static RoadPosition convertRoad(double x, double y, boolean isGeo, String vehicleClass) {
+    TraCIRoadPosition roadPosition = Simulation.convertRoad(x, y, isGeo, vehicleClass);
+    RoadPosition position = new RoadPosition(roadPosition.getEdgeID(), roadPosition.getPos(), roadPosition.getLaneIndex());
+    roadPosition.delete();
+    return position;
+  }
+}
@@ -0,0 +1,332 @@
+package de.tum.logistics.routing;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPInputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+// Lane geometries of a sumo net file in a uniform grid, answers nearest-lane queries like Simulation.convertRoad
+// without a TraCI round-trip. Only lanes of normal edges are indexed, internal junction lanes are skipped.
+public final class LaneIndex {
+  private static final double CELL_SIZE = 50;
+
+  private final NetProjection projection;
+  private final String[] edgeNames;
+  private final String[] laneIds;
+  private final int[] laneEdge;
+  private final int[] laneIndex;
+  private final double[] laneLengthFactor;
+  private final int[] lanePermission;
+  private final String[][] permissions;
+  private final Map<String, boolean[]> permittedByClass = new ConcurrentHashMap<>();
+
+  // segment i runs from point segmentStart[i] to the next point, pointOffset is the distance along the lane shape
+  private final double[] pointX;
+  private final double[] pointY;
+  private final double[] pointOffset;
+  private final int[] segmentLane;
+  private final int[] segmentStart;
+
+  private final double minX;
+  private final double minY;
+  private final int columns;
+  private final int rows;
+  private final int[] firstInCell;
+  private final int[] cellSegments;
+
+  private LaneIndex(NetProjection projection, Loader loader) {
+    this.projection = projection;
+    this.edgeNames = loader.edgeNames.toArray(new String[0]);
+    this.laneIds = loader.laneIds.toArray(new String[0]);
+    int laneCount = laneIds.length;
+    this.laneEdge = Arrays.copyOf(loader.laneEdge, laneCount);
+    this.laneIndex = Arrays.copyOf(loader.laneIndex, laneCount);
+    this.laneLengthFactor = Arrays.copyOf(loader.laneLengthFactor, laneCount);
+    this.lanePermission = Arrays.copyOf(loader.lanePermission, laneCount);
+    this.permissions = loader.permissions.toArray(new String[0][]);
+    this.pointX = Arrays.copyOf(loader.pointX, loader.pointCount);
+    this.pointY = Arrays.copyOf(loader.pointY, loader.pointCount);
+    this.pointOffset = Arrays.copyOf(loader.pointOffset, loader.pointCount);
+    this.segmentLane = Arrays.copyOf(loader.segmentLane, loader.segmentCount);
+    this.segmentStart = Arrays.copyOf(loader.segmentStart, loader.segmentCount);
+
+    double minX = Double.POSITIVE_INFINITY, minY = Double.POSITIVE_INFINITY;
+    double maxX = Double.NEGATIVE_INFINITY, maxY = Double.NEGATIVE_INFINITY;
+    for (int i = 0; i < pointX.length; i++) {
+      minX = Math.min(minX, pointX[i]);
+      minY = Math.min(minY, pointY[i]);
+      maxX = Math.max(maxX, pointX[i]);
+      maxY = Math.max(maxY, pointY[i]);
+    }
+    if (pointX.length == 0) {
+      minX = minY = maxX = maxY = 0;
+    }
+    this.minX = minX;
+    this.minY = minY;
+    this.columns = (int) ((maxX - minX) / CELL_SIZE) + 1;
+    this.rows = (int) ((maxY - minY) / CELL_SIZE) + 1;
+
+    // counting pass over the segment bounding boxes, then filling the cell lists
+    this.firstInCell = new int[columns * rows + 1];
+    for (int segment = 0; segment < segmentStart.length; segment++) {
+      int[] range = cellRange(segment);
+      for (int r = range[2]; r <= range[3]; r++) {
+        for (int c = range[0]; c <= range[1]; c++) {
+          firstInCell[r * columns + c + 1]++;
+        }
+      }
+    }
+    for (int cell = 0; cell < columns * rows; cell++) {
+      firstInCell[cell + 1] += firstInCell[cell];
+    }
+    int[] nextFree = Arrays.copyOf(firstInCell, columns * rows);
+    this.cellSegments = new int[firstInCell[columns * rows]];
+    for (int segment = 0; segment < segmentStart.length; segment++) {
+      int[] range = cellRange(segment);
+      for (int r = range[2]; r <= range[3]; r++) {
+        for (int c = range[0]; c <= range[1]; c++) {
+          cellSegments[nextFree[r * columns + c]++] = segment;
+        }
+      }
+    }
+  }
+
+  private int[] cellRange(int segment) {
+    int start = segmentStart[segment];
+    return new int[]{
+        column(Math.min(pointX[start], pointX[start + 1])), column(Math.max(pointX[start], pointX[start + 1])),
+        row(Math.min(pointY[start], pointY[start + 1])), row(Math.max(pointY[start], pointY[start + 1]))
+    };
+  }
+
+  private int column(double x) {
+    return Math.clamp((int) Math.floor((x - minX) / CELL_SIZE), 0, columns - 1);
+  }
+
+  private int row(double y) {
+    return Math.clamp((int) Math.floor((y - minY) / CELL_SIZE), 0, rows - 1);
+  }
+
+  public static LaneIndex load(File netFile) throws IOException, XMLStreamException {
+    try (InputStream in = new BufferedInputStream(new FileInputStream(netFile), 1 << 16)) {
+      InputStream xml = netFile.getName().endsWith(".gz") ? new GZIPInputStream(in, 1 << 16) : in;
+      XMLStreamReader reader = XMLInputFactory.newFactory().createXMLStreamReader(xml);
+      Loader loader = new Loader();
+      NetProjection projection = null;
+      int currentEdge = -1;
+      while (reader.hasNext()) {
+        if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+          continue;
+        }
+        switch (reader.getLocalName()) {
+          case "location" -> projection = NetProjection.fromLocation(
+              reader.getAttributeValue(null, "netOffset"), reader.getAttributeValue(null, "projParameter"));
+          case "edge" -> {
+            String function = reader.getAttributeValue(null, "function");
+            currentEdge = function == null || function.equals("normal")
+                ? loader.addEdge(reader.getAttributeValue(null, "id"))
+                : -1;
+          }
+          case "lane" -> {
+            if (currentEdge >= 0) {
+              loader.addLane(currentEdge,
+                  reader.getAttributeValue(null, "id"),
+                  Integer.parseInt(reader.getAttributeValue(null, "index")),
+                  Double.parseDouble(reader.getAttributeValue(null, "length")),
+                  reader.getAttributeValue(null, "shape"),
+                  reader.getAttributeValue(null, "allow"),
+                  reader.getAttributeValue(null, "disallow"));
+            }
+          }
+          default -> {
+          }
+        }
+      }
+      reader.close();
+      if (projection == null) {
+        throw new IllegalStateException("Net file " + netFile + " has no location element");
+      }
+      return new LaneIndex(projection, loader);
+    }
+  }
+
+  public int laneCount() {
+    return laneIds.length;
+  }
+
+  public RoadPosition snap(double longitude, double latitude, String vehicleClass) {
+    double[] xy = projection.toNet(longitude, latitude);
+    return snapCartesian(xy[0], xy[1], vehicleClass);
+  }
+
+  // nearest lane permitting the vehicle class, null if there is none; ties go to the smaller lane id like in sumo
+  public RoadPosition snapCartesian(double x, double y, String vehicleClass) {
+    boolean[] permitted = permittedByClass.computeIfAbsent(vehicleClass, this::permittedPermissions);
+    int centerColumn = column(x);
+    int centerRow = row(y);
+    // distance from the point to the cell the search is centered on, non-zero for points outside the grid
+    double cellMinX = minX + centerColumn * CELL_SIZE;
+    double cellMinY = minY + centerRow * CELL_SIZE;
+    double outside = Math.hypot(Math.max(0, Math.max(cellMinX - x, x - cellMinX - CELL_SIZE)),
+        Math.max(0, Math.max(cellMinY - y, y - cellMinY - CELL_SIZE)));
+    int maxRing = Math.max(Math.max(centerColumn, columns - 1 - centerColumn), Math.max(centerRow, rows - 1 - centerRow));
+
+    double bestDistanceSq = Double.POSITIVE_INFINITY;
+    int bestSegment = -1;
+    double bestOffset = 0;
+    for (int ring = 0; ring <= maxRing; ring++) {
+      for (int r = centerRow - ring; r <= centerRow + ring; r++) {
+        if (r < 0 || r >= rows) {
+          continue;
+        }
+        boolean edgeRow = r == centerRow - ring || r == centerRow + ring;
+        for (int c = centerColumn - ring; c <= centerColumn + ring; c += edgeRow ? 1 : 2 * ring) {
+          if (c >= 0 && c < columns) {
+            int cell = r * columns + c;
+            for (int i = firstInCell[cell]; i < firstInCell[cell + 1]; i++) {
+              int segment = cellSegments[i];
+              int lane = segmentLane[segment];
+              if (!permitted[lanePermission[lane]]) {
+                continue;
+              }
+              int start = segmentStart[segment];
+              double ax = pointX[start], ay = pointY[start];
+              double dx = pointX[start + 1] - ax, dy = pointY[start + 1] - ay;
+              double lengthSq = dx * dx + dy * dy;
+              double t = lengthSq > 0 ? Math.clamp(((x - ax) * dx + (y - ay) * dy) / lengthSq, 0, 1) : 0;
+              double px = ax + t * dx - x, py = ay + t * dy - y;
+              double distanceSq = px * px + py * py;
+              if (distanceSq < bestDistanceSq
+                  || (distanceSq == bestDistanceSq && lane != segmentLane[bestSegment] && laneIds[lane].compareTo(laneIds[segmentLane[bestSegment]]) < 0)) {
+                bestDistanceSq = distanceSq;
+                bestSegment = segment;
+                bestOffset = pointOffset[start] + t * Math.sqrt(lengthSq);
+              }
+            }
+          }
+        }
+      }
+      // every segment outside the searched rings is at least ring * CELL_SIZE - outside away
+      double bound = ring * CELL_SIZE - outside;
+      if (bestSegment >= 0 && bound > 0 && bestDistanceSq <= bound * bound) {
+        break;
+      }
+    }
+    if (bestSegment < 0) {
+      return null;
+    }
+    int lane = segmentLane[bestSegment];
+    return new RoadPosition(edgeNames[laneEdge[lane]], bestOffset * laneLengthFactor[lane], laneIndex[lane]);
+  }
+
+  private boolean[] permittedPermissions(String vehicleClass) {
+    boolean[] permitted = new boolean[permissions.length];
+    for (int i = 0; i < permissions.length; i++) {
+      permitted[i] = permits(permissions[i][0], permissions[i][1], vehicleClass);
+    }
+    return permitted;
+  }
+
+  // without allow and disallow attributes a lane is open to every class
+  static boolean permits(String allow, String disallow, String vehicleClass) {
+    if (allow != null) {
+      for (String permitted : allow.split(" ")) {
+        if (permitted.equals(vehicleClass) || permitted.equals("all")) {
+          return true;
+        }
+      }
+      return false;
+    }
+    if (disallow != null) {
+      for (String forbidden : disallow.split(" ")) {
+        if (forbidden.equals(vehicleClass) || forbidden.equals("all")) {
+          return false;
+        }
+      }
+    }
+    return true;
+  }
+
+  private static final class Loader {
+    private final List<String> edgeNames = new ArrayList<>();
+    private final List<String> laneIds = new ArrayList<>();
+    private final List<String[]> permissions = new ArrayList<>();
+    private final Map<String, Integer> permissionIds = new HashMap<>();
+    private int[] laneEdge = new int[1024];
+    private int[] laneIndex = new int[1024];
+    private double[] laneLengthFactor = new double[1024];
+    private int[] lanePermission = new int[1024];
+    private double[] pointX = new double[4096];
+    private double[] pointY = new double[4096];
+    private double[] pointOffset = new double[4096];
+    private int pointCount = 0;
+    private int[] segmentLane = new int[4096];
+    private int[] segmentStart = new int[4096];
+    private int segmentCount = 0;
+
+    int addEdge(String edgeId) {
+      edgeNames.add(edgeId);
+      return edgeNames.size() - 1;
+    }
+
+    void addLane(int edge, String laneId, int index, double length, String shape, String allow, String disallow) {
+      int lane = laneIds.size();
+      laneIds.add(laneId);
+      if (lane == laneEdge.length) {
+        laneEdge = Arrays.copyOf(laneEdge, lane * 2);
+        laneIndex = Arrays.copyOf(laneIndex, lane * 2);
+        laneLengthFactor = Arrays.copyOf(laneLengthFactor, lane * 2);
+        lanePermission = Arrays.copyOf(lanePermission, lane * 2);
+      }
+      laneEdge[lane] = edge;
+      laneIndex[lane] = index;
+      lanePermission[lane] = permissionIds.computeIfAbsent(allow + "|" + disallow, key -> {
+        permissions.add(new String[]{allow, disallow});
+        return permissions.size() - 1;
+      });
+
+      String[] points = shape.split(" ");
+      double offset = 0;
+      for (int i = 0; i < points.length; i++) {
+        int comma = points[i].indexOf(',');
+        double x = Double.parseDouble(points[i].substring(0, comma));
+        int secondComma = points[i].indexOf(',', comma + 1);
+        double y = Double.parseDouble(secondComma < 0 ? points[i].substring(comma + 1) : points[i].substring(comma + 1, secondComma));
+        if (pointCount == pointX.length) {
+          pointX = Arrays.copyOf(pointX, pointCount * 2);
+          pointY = Arrays.copyOf(pointY, pointCount * 2);
+          pointOffset = Arrays.copyOf(pointOffset, pointCount * 2);
+        }
+        if (i > 0) {
+          offset += Math.hypot(x - pointX[pointCount - 1], y - pointY[pointCount - 1]);
+          if (segmentCount == segmentLane.length) {
+            segmentLane = Arrays.copyOf(segmentLane, segmentCount * 2);
+            segmentStart = Arrays.copyOf(segmentStart, segmentCount * 2);
+          }
+          segmentLane[segmentCount] = lane;
+          segmentStart[segmentCount] = pointCount - 1;
+          segmentCount++;
+        }
+        pointX[pointCount] = x;
+        pointY[pointCount] = y;
+        pointOffset[pointCount] = offset;
+        pointCount++;
+      }
+      // sumo reports positions in lane length, which differs from the geometric shape length
+      laneLengthFactor[lane] = offset > 0 ? length / offset : 1;
+    }
+  }
+}
@@ -0,0 +1,78 @@
+package de.tum.logistics.routing;
+
+// Geo to network coordinates as described by the <location> element of a sumo net file.
+// Supports the UTM projections netconvert writes for OSM imports and unprojected networks ("!").
+public final class NetProjection {
+  private static final double A = 6_378_137.0;
+  private static final double F = 1 / 298.257223563;
+  private static final double K0 = 0.9996;
+  private static final double E2 = F * (2 - F);
+  private static final double EP2 = E2 / (1 - E2);
+  private static final double M1 = 1 - E2 / 4 - 3 * E2 * E2 / 64 - 5 * E2 * E2 * E2 / 256;
+  private static final double M2 = 3 * E2 / 8 + 3 * E2 * E2 / 32 + 45 * E2 * E2 * E2 / 1024;
+  private static final double M3 = 15 * E2 * E2 / 256 + 45 * E2 * E2 * E2 / 1024;
+  private static final double M4 = 35 * E2 * E2 * E2 / 3072;
+
+  private final boolean projected;
+  private final double centralMeridian;
+  private final double falseNorthing;
+  private final double offsetX;
+  private final double offsetY;
+
+  private NetProjection(boolean projected, double centralMeridian, double falseNorthing, double offsetX, double offsetY) {
+    this.projected = projected;
+    this.centralMeridian = centralMeridian;
+    this.falseNorthing = falseNorthing;
+    this.offsetX = offsetX;
+    this.offsetY = offsetY;
+  }
+
+  public static NetProjection fromLocation(String netOffset, String projParameter) {
+    String[] offset = netOffset.split(",");
+    double offsetX = Double.parseDouble(offset[0]);
+    double offsetY = Double.parseDouble(offset[1]);
+    if (projParameter.equals("!")) {
+      return new NetProjection(false, 0, 0, offsetX, offsetY);
+    }
+    int zone = -1;
+    boolean south = false;
+    boolean utm = false;
+    for (String parameter : projParameter.trim().split("\\s+")) {
+      if (parameter.equals("+proj=utm")) {
+        utm = true;
+      } else if (parameter.startsWith("+zone=")) {
+        zone = Integer.parseInt(parameter.substring("+zone=".length()));
+      } else if (parameter.equals("+south")) {
+        south = true;
+      } else if (parameter.startsWith("+ellps=") && !parameter.equals("+ellps=WGS84")) {
+        throw new IllegalStateException("Unsupported ellipsoid in " + projParameter);
+      }
+    }
+    if (!utm || zone < 1) {
+      throw new IllegalStateException("Unsupported projection " + projParameter);
+    }
+    return new NetProjection(true, Math.toRadians(zone * 6 - 183), south ? 10_000_000 : 0, offsetX, offsetY);
+  }
+
+  // transverse mercator series expansion, millimeter accurate within the zone
+  public double[] toNet(double longitude, double latitude) {
+    if (!projected) {
+      return new double[]{longitude + offsetX, latitude + offsetY};
+    }
+    double phi = Math.toRadians(latitude);
+    double sin = Math.sin(phi);
+    double cos = Math.cos(phi);
+    double tan = sin / cos;
+    double n = A / Math.sqrt(1 - E2 * sin * sin);
+    double t = tan * tan;
+    double c = EP2 * cos * cos;
+    double a = cos * (Math.toRadians(longitude) - centralMeridian);
+    double m = A * (M1 * phi - M2 * Math.sin(2 * phi) + M3 * Math.sin(4 * phi) - M4 * Math.sin(6 * phi));
+    double a2 = a * a;
+    double x = K0 * n * (a + (1 - t + c) * a2 * a / 6
+        + (5 - 18 * t + t * t + 72 * c - 58 * EP2) * a2 * a2 * a / 120) + 500_000;
+    double y = K0 * (m + n * tan * (a2 / 2 + (5 - t + 9 * c + 4 * c * c) * a2 * a2 / 24
+        + (61 - 58 * t + t * t + 600 * c - 330 * EP2) * a2 * a2 * a2 / 720)) + falseNorthing;
+    return new double[]{x + offsetX, y + offsetY};
+  }
+}
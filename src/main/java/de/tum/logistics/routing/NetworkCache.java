@@ -0,0 +1,323 @@
+package de.tum.logistics.routing;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestInputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Persistent cache of edge snaps and road graph distances for one network and vehicle class.
+// The file written by the previous run is memory-mapped and searched in place, entries added during this run
+// are kept on the heap until save() merges both into a new file. The distances of every stop pair grow the file
+// quadratically, so offsets are longs and the records are mapped in chunks below the 2 GB limit of one mapping.
+public final class NetworkCache {
+  private static final int FILE_MAGIC = 0x4C4D4E43;
+  private static final int FILE_VERSION = 3;
+  private static final int HASH_LENGTH = 32;
+  private static final int SNAP_RECORD_SIZE = 32;
+  private static final int PAIR_RECORD_SIZE = 16;
+  private static final Map<String, NetworkCache> openCaches = new ConcurrentHashMap<>();
+
+  private record SnapKey(long longitudeBits, long latitudeBits) {}
+
+  // fixed size records of one file section, every chunk holds whole records
+  private record Section(MappedByteBuffer[] chunks, int recordSize, int recordsPerChunk, long count) {
+    static final Section EMPTY = new Section(new MappedByteBuffer[0], 1, 1, 0);
+
+    static Section map(FileChannel channel, long offset, long count, int recordSize) throws IOException {
+      int recordsPerChunk = Integer.MAX_VALUE / recordSize;
+      MappedByteBuffer[] chunks = new MappedByteBuffer[Math.toIntExact((count + recordsPerChunk - 1) / recordsPerChunk)];
+      for (int i = 0; i < chunks.length; i++) {
+        long first = (long) i * recordsPerChunk;
+        chunks[i] = channel.map(FileChannel.MapMode.READ_ONLY, offset + first * recordSize,
+            Math.min(recordsPerChunk, count - first) * recordSize);
+      }
+      return new Section(chunks, recordSize, recordsPerChunk, count);
+    }
+
+    long getLong(long record, int field) {
+      return chunks[(int) (record / recordsPerChunk)].getLong((int) (record % recordsPerChunk) * recordSize + field);
+    }
+
+    int getInt(long record, int field) {
+      return chunks[(int) (record / recordsPerChunk)].getInt((int) (record % recordsPerChunk) * recordSize + field);
+    }
+
+    double getDouble(long record, int field) {
+      return chunks[(int) (record / recordsPerChunk)].getDouble((int) (record % recordsPerChunk) * recordSize + field);
+    }
+  }
+
+  private final File cacheFile;
+  private final byte[] networkHash;
+  private final List<String> edgeNames = new ArrayList<>();
+  private final Map<String, Integer> edgeIndices = new ConcurrentHashMap<>();
+  private boolean loaded;
+  private Section snapRecords = Section.EMPTY;
+  private Section distanceRecords = Section.EMPTY;
+  private final Map<SnapKey, RoadPosition> newSnaps = new ConcurrentHashMap<>();
+  private final ConcurrentLongDoubleMap newDistances = new ConcurrentLongDoubleMap();
+
+  private NetworkCache(File cacheFile, byte[] networkHash) {
+    this.cacheFile = cacheFile;
+    this.networkHash = networkHash;
+  }
+
+  public static NetworkCache open(File netFile, String vehicleClass, File cacheFile) {
+    NetworkCache cache = new NetworkCache(cacheFile, networkHash(netFile, vehicleClass));
+    if (cacheFile.exists()) {
+      try {
+        if (cache.map()) {
+          System.out.println("Loaded " + cache.snapRecords.count() + " edge snaps and " + cache.distanceRecords.count()
+              + " distances for " + vehicleClass + " from " + cacheFile.getAbsolutePath());
+        } else {
+          System.out.println("Routing cache at " + cacheFile.getAbsolutePath() + " is stale, rebuilding");
+        }
+      } catch (IOException | RuntimeException e) {
+        System.out.println("Could not read routing cache at " + cacheFile.getAbsolutePath() + ": " + e.getMessage());
+      }
+    }
+    openCaches.put(vehicleClass, cache);
+    return cache;
+  }
+
+  // the cache opened for the vehicle class, or null if caching is disabled for it
+  public static NetworkCache get(String vehicleClass) {
+    return openCaches.get(vehicleClass);
+  }
+
+  public static void saveAll() {
+    for (NetworkCache cache : openCaches.values()) {
+      try {
+        cache.save();
+      } catch (IOException e) {
+        e.printStackTrace();
+      }
+    }
+  }
+
+  // hash of the net file and vehicle class this cache belongs to
+  public byte[] networkHash() {
+    return networkHash.clone();
+  }
+
+  private static byte[] networkHash(File netFile, String vehicleClass) {
+    try (DigestInputStream in = new DigestInputStream(new BufferedInputStream(new FileInputStream(netFile)),
+        MessageDigest.getInstance("SHA-256"))) {
+      in.transferTo(OutputStream.nullOutputStream());
+      MessageDigest digest = in.getMessageDigest();
+      digest.update(vehicleClass.getBytes(StandardCharsets.UTF_8));
+      return digest.digest();
+    } catch (IOException | NoSuchAlgorithmException e) {
+      throw new RuntimeException("Could not hash network file " + netFile.getAbsolutePath(), e);
+    }
+  }
+
+  private boolean map() throws IOException {
+    try (FileChannel channel = FileChannel.open(cacheFile.toPath(), StandardOpenOption.READ)) {
+      DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel)));
+      if (in.readInt() != FILE_MAGIC || in.readInt() != FILE_VERSION) {
+        return false;
+      }
+      byte[] storedHash = new byte[HASH_LENGTH];
+      in.readFully(storedHash);
+      if (!Arrays.equals(storedHash, networkHash)) {
+        return false;
+      }
+      int edgeCount = in.readInt();
+      long snapCount = in.readLong();
+      long distanceCount = in.readLong();
+      long position = 8 + HASH_LENGTH + 20;
+      List<String> storedEdges = new ArrayList<>();
+      for (int i = 0; i < edgeCount; i++) {
+        byte[] name = new byte[in.readInt()];
+        in.readFully(name);
+        storedEdges.add(new String(name, StandardCharsets.UTF_8));
+        position += 4 + name.length;
+      }
+      long distanceOffset = position + snapCount * SNAP_RECORD_SIZE;
+      if (snapCount < 0 || distanceCount < 0 || distanceOffset + distanceCount * PAIR_RECORD_SIZE != channel.size()) {
+        return false;
+      }
+      snapRecords = Section.map(channel, position, snapCount, SNAP_RECORD_SIZE);
+      distanceRecords = Section.map(channel, distanceOffset, distanceCount, PAIR_RECORD_SIZE);
+      storedEdges.forEach(this::internEdge);
+      loaded = true;
+      return true;
+    }
+  }
+
+  private synchronized int internEdge(String edgeId) {
+    Integer index = edgeIndices.get(edgeId);
+    if (index == null) {
+      index = edgeNames.size();
+      edgeNames.add(edgeId);
+      edgeIndices.put(edgeId, index);
+    }
+    return index;
+  }
+
+  private synchronized String edgeName(int index) {
+    return edgeNames.get(index);
+  }
+
+  // returns null on a cache miss
+  public RoadPosition snap(double longitude, double latitude) {
+    long longitudeBits = Double.doubleToLongBits(longitude);
+    long latitudeBits = Double.doubleToLongBits(latitude);
+    long low = 0, high = snapRecords.count() - 1;
+    while (low <= high) {
+      long mid = (low + high) >>> 1;
+      int comparison = Long.compare(snapRecords.getLong(mid, 0), longitudeBits);
+      if (comparison == 0) {
+        comparison = Long.compare(snapRecords.getLong(mid, 8), latitudeBits);
+      }
+      if (comparison == 0) {
+        return new RoadPosition(edgeName(snapRecords.getInt(mid, 16)), snapRecords.getDouble(mid, 24),
+            snapRecords.getInt(mid, 20));
+      } else if (comparison < 0) {
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return newSnaps.get(new SnapKey(longitudeBits, latitudeBits));
+  }
+
+  public void putSnap(double longitude, double latitude, RoadPosition snap) {
+    internEdge(snap.edgeId());
+    newSnaps.put(new SnapKey(Double.doubleToLongBits(longitude), Double.doubleToLongBits(latitude)), snap);
+  }
+
+  // road graph distance between two edges, NaN on a cache miss
+  public double distance(String fromEdge, String toEdge) {
+    return pairValue(fromEdge, toEdge, distanceRecords, newDistances);
+  }
+
+  public void putDistance(String fromEdge, String toEdge, double distance) {
+    newDistances.put(pairKey(internEdge(fromEdge), internEdge(toEdge)), distance);
+  }
+
+  // index of the edge within this cache, for bulk lookups through distance(int, int) without hashing edge names
+  public int edgeIndex(String edgeId) {
+    return internEdge(edgeId);
+  }
+
+  public double distance(int fromIndex, int toIndex) {
+    return pairValue(pairKey(fromIndex, toIndex), distanceRecords, newDistances);
+  }
+
+  public void putDistance(int fromIndex, int toIndex, double distance) {
+    newDistances.put(pairKey(fromIndex, toIndex), distance);
+  }
+
+  private double pairValue(String fromEdge, String toEdge, Section records, ConcurrentLongDoubleMap newValues) {
+    Integer fromIndex = edgeIndices.get(fromEdge);
+    Integer toIndex = edgeIndices.get(toEdge);
+    if (fromIndex == null || toIndex == null) {
+      return Double.NaN;
+    }
+    return pairValue(pairKey(fromIndex, toIndex), records, newValues);
+  }
+
+  private double pairValue(long key, Section records, ConcurrentLongDoubleMap newValues) {
+    long low = 0, high = records.count() - 1;
+    while (low <= high) {
+      long mid = (low + high) >>> 1;
+      long recordKey = records.getLong(mid, 0);
+      if (recordKey == key) {
+        return records.getDouble(mid, 8);
+      } else if (recordKey < key) {
+        low = mid + 1;
+      } else {
+        high = mid - 1;
+      }
+    }
+    return newValues.get(key);
+  }
+
+  private static long pairKey(int fromIndex, int toIndex) {
+    return (long) fromIndex << 32 | toIndex;
+  }
+
+  public synchronized void save() throws IOException {
+    if (newSnaps.isEmpty() && newDistances.size() == 0 && loaded) {
+      return;
+    }
+    TreeMap<SnapKey, RoadPosition> snaps = new TreeMap<>(Comparator.comparingLong(SnapKey::longitudeBits).thenComparingLong(SnapKey::latitudeBits));
+    for (long i = 0; i < snapRecords.count(); i++) {
+      snaps.put(new SnapKey(snapRecords.getLong(i, 0), snapRecords.getLong(i, 8)), new RoadPosition(
+          edgeNames.get(snapRecords.getInt(i, 16)), snapRecords.getDouble(i, 24), snapRecords.getInt(i, 20)));
+    }
+    snaps.putAll(newSnaps);
+    long[] newDistanceKeys = newDistances.sortedKeys();
+    long distanceCount = mergePairs(distanceRecords, newDistanceKeys, newDistances, null);
+
+    File tempFile = new File(cacheFile.getAbsolutePath() + ".tmp");
+    try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+      out.writeInt(FILE_MAGIC);
+      out.writeInt(FILE_VERSION);
+      out.write(networkHash);
+      out.writeInt(edgeNames.size());
+      out.writeLong(snaps.size());
+      out.writeLong(distanceCount);
+      for (String edgeName : edgeNames) {
+        byte[] name = edgeName.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(name.length);
+        out.write(name);
+      }
+      for (Map.Entry<SnapKey, RoadPosition> entry : snaps.entrySet()) {
+        out.writeLong(entry.getKey().longitudeBits());
+        out.writeLong(entry.getKey().latitudeBits());
+        out.writeInt(edgeIndices.get(entry.getValue().edgeId()));
+        out.writeInt(entry.getValue().laneIndex());
+        out.writeDouble(entry.getValue().pos());
+      }
+      mergePairs(distanceRecords, newDistanceKeys, newDistances, out);
+    }
+    Files.move(tempFile.toPath(), cacheFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    System.out.println("Saved " + snaps.size() + " edge snaps and " + distanceCount + " distances to "
+        + cacheFile.getAbsolutePath());
+  }
+
+  // merges the sorted records of the mapped file with the new values, which win on equal keys. The merged records
+  // are streamed to out instead of being collected on the heap, a null out only counts them
+  private static long mergePairs(Section records, long[] newKeys, ConcurrentLongDoubleMap newValues,
+      DataOutputStream out) throws IOException {
+    long size = 0;
+    long i = 0;
+    int j = 0;
+    while (i < records.count() || j < newKeys.length) {
+      long oldKey = i < records.count() ? records.getLong(i, 0) : Long.MAX_VALUE;
+      long newKey = j < newKeys.length ? newKeys[j] : Long.MAX_VALUE;
+      long key;
+      double value;
+      if (newKey <= oldKey) {
+        key = newKey;
+        value = newValues.get(newKey);
+        j++;
+        if (newKey == oldKey) {
+          i++;
+        }
+      } else {
+        key = oldKey;
+        value = records.getDouble(i, 8);
+        i++;
+      }
+      if (out != null) {
+        out.writeLong(key);
+        out.writeDouble(value);
+      }
+      size++;
+    }
+    return size;
+  }
+}
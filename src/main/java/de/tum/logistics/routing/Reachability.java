@@ -0,0 +1,131 @@
+package de.tum.logistics.routing;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Directed edge connectivity for one vehicle class, successors and predecessors in compressed sparse row layout.
+// Replaces per-address findRoute round-trips with one graph search per origin or destination edge.
+public final class Reachability {
+  private final String[] edgeNames;
+  private final Map<String, Integer> edgeIndices;
+  private final int[] firstSuccessor;
+  private final int[] successors;
+  private final int[] firstPredecessor;
+  private final int[] predecessors;
+
+  private Reachability(String[] edgeNames, Map<String, Integer> edgeIndices, int[] from, int[] to, int linkCount) {
+    this.edgeNames = edgeNames;
+    this.edgeIndices = edgeIndices;
+    this.firstSuccessor = new int[edgeNames.length + 1];
+    this.successors = new int[linkCount];
+    this.firstPredecessor = new int[edgeNames.length + 1];
+    this.predecessors = new int[linkCount];
+    fill(from, to, linkCount, firstSuccessor, successors);
+    fill(to, from, linkCount, firstPredecessor, predecessors);
+  }
+
+  private static void fill(int[] from, int[] to, int linkCount, int[] first, int[] targets) {
+    for (int i = 0; i < linkCount; i++) {
+      first[from[i] + 1]++;
+    }
+    for (int v = 0; v + 1 < first.length; v++) {
+      first[v + 1] += first[v];
+    }
+    int[] nextFree = Arrays.copyOf(first, first.length - 1);
+    for (int i = 0; i < linkCount; i++) {
+      targets[nextFree[from[i]]++] = to[i];
+    }
+  }
+
+  // lane permissions and lane-to-lane links of all non-internal edges of a loaded net file
+  public static Reachability fromNetwork(RoadNetwork network, String vehicleType) {
+    List<String> edges = new ArrayList<>();
+    Map<String, Integer> edgeIndices = new HashMap<>();
+    int[] indexOfNetworkEdge = new int[network.edgeCount()];
+    for (int edge = 0; edge < network.edgeCount(); edge++) {
+      indexOfNetworkEdge[edge] = -1;
+      if (network.edgeAllows(edge, vehicleType)) {
+        indexOfNetworkEdge[edge] = edges.size();
+        edgeIndices.put(network.edgeId(edge), edges.size());
+        edges.add(network.edgeId(edge));
+      }
+    }
+
+    int[] from = new int[1024];
+    int[] to = new int[1024];
+    int linkCount = 0;
+    for (int edge = 0; edge < network.edgeCount(); edge++) {
+      if (indexOfNetworkEdge[edge] < 0) {
+        continue;
+      }
+      int endLane = network.firstLane(edge) + network.laneCount(edge);
+      for (int lane = network.firstLane(edge); lane < endLane; lane++) {
+        if (!network.laneAllows(lane, vehicleType)) {
+          continue;
+        }
+        for (int connection = network.firstConnection(lane); connection < network.endConnection(lane); connection++) {
+          int targetLane = network.connectionTarget(connection);
+          int toIndex = indexOfNetworkEdge[network.laneEdge(targetLane)];
+          if (toIndex < 0 || !network.laneAllows(targetLane, vehicleType)) {
+            continue;
+          }
+          if (linkCount == from.length) {
+            from = Arrays.copyOf(from, linkCount * 2);
+            to = Arrays.copyOf(to, linkCount * 2);
+          }
+          from[linkCount] = indexOfNetworkEdge[edge];
+          to[linkCount] = toIndex;
+          linkCount++;
+        }
+      }
+    }
+    return new Reachability(edges.toArray(new String[0]), edgeIndices, from, to, linkCount);
+  }
+
+  public int edgeCount() {
+    return edgeNames.length;
+  }
+
+  // all edges a vehicle starting on the given edge can drive to, including the edge itself
+  public Set<String> reachableFrom(String edge) {
+    return search(edge, firstSuccessor, successors);
+  }
+
+  // all edges from which a vehicle can drive to the given edge, including the edge itself
+  public Set<String> reaching(String edge) {
+    return search(edge, firstPredecessor, predecessors);
+  }
+
+  private Set<String> search(String edge, int[] first, int[] targets) {
+    Integer start = edgeIndices.get(edge);
+    if (start == null) {
+      throw new IllegalArgumentException("Edge " + edge + " is not part of the network");
+    }
+    boolean[] visited = new boolean[edgeNames.length];
+    int[] queue = new int[edgeNames.length];
+    int head = 0;
+    int tail = 0;
+    visited[start] = true;
+    queue[tail++] = start;
+    while (head < tail) {
+      int current = queue[head++];
+      for (int i = first[current]; i < first[current + 1]; i++) {
+        int next = targets[i];
+        if (!visited[next]) {
+          visited[next] = true;
+          queue[tail++] = next;
+        }
+      }
+    }
+    Set<String> result = new HashSet<>(tail * 2);
+    for (int i = 0; i < tail; i++) {
+      result.add(edgeNames[queue[i]]);
+    }
+    return result;
+  }
+}
@@ -0,0 +1,128 @@
+package de.tum.logistics.routing;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// Undirected junction graph in compressed sparse row layout, arcs of vertex v are firstArc[v]..firstArc[v+1]-1
+public final class RoadGraph {
+  private final String[] vertexNames;
+  private final Map<String, Integer> vertexIndices;
+  private final int[] firstArc;
+  private final int[] arcTarget;
+  private final double[] arcWeight;
+
+  private RoadGraph(String[] vertexNames, Map<String, Integer> vertexIndices, int[] firstArc, int[] arcTarget, double[] arcWeight) {
+    this.vertexNames = vertexNames;
+    this.vertexIndices = vertexIndices;
+    this.firstArc = firstArc;
+    this.arcTarget = arcTarget;
+    this.arcWeight = arcWeight;
+  }
+
+  public int vertexCount() {
+    return vertexNames.length;
+  }
+
+  public int indexOf(String vertex) {
+    return vertexIndices.getOrDefault(vertex, -1);
+  }
+
+  public String vertexName(int vertex) {
+    return vertexNames[vertex];
+  }
+
+  public int firstArc(int vertex) {
+    return firstArc[vertex];
+  }
+
+  public int endArc(int vertex) {
+    return firstArc[vertex + 1];
+  }
+
+  public int arcTarget(int arc) {
+    return arcTarget[arc];
+  }
+
+  public double arcWeight(int arc) {
+    return arcWeight[arc];
+  }
+
+  // identifies the graph a persisted routing structure was derived from
+  public long fingerprint() {
+    long hash = 0xcbf29ce484222325L;
+    for (String vertexName : vertexNames) {
+      hash = (hash ^ vertexName.hashCode()) * 0x100000001b3L;
+    }
+    for (int i = 0; i < arcTarget.length; i++) {
+      hash = (hash ^ arcTarget[i]) * 0x100000001b3L;
+      hash = (hash ^ Double.doubleToLongBits(arcWeight[i])) * 0x100000001b3L;
+    }
+    return hash;
+  }
+
+  public static final class Builder {
+    private final Map<String, Integer> vertexIndices = new HashMap<>();
+    private String[] vertexNames = new String[1024];
+    private int[] edgeFrom = new int[1024];
+    private int[] edgeTo = new int[1024];
+    private double[] edgeWeight = new double[1024];
+    private int edgeCount = 0;
+
+    public int addVertex(String vertex) {
+      Integer index = vertexIndices.get(vertex);
+      if (index != null) {
+        return index;
+      }
+      int newIndex = vertexIndices.size();
+      if (newIndex == vertexNames.length) {
+        vertexNames = Arrays.copyOf(vertexNames, newIndex * 2);
+      }
+      vertexNames[newIndex] = vertex;
+      vertexIndices.put(vertex, newIndex);
+      return newIndex;
+    }
+
+    public Builder addEdge(String from, String to, double length) {
+      int fromIndex = addVertex(from);
+      int toIndex = addVertex(to);
+      if (fromIndex == toIndex) {
+        return this;
+      }
+      if (edgeCount == edgeFrom.length) {
+        edgeFrom = Arrays.copyOf(edgeFrom, edgeCount * 2);
+        edgeTo = Arrays.copyOf(edgeTo, edgeCount * 2);
+        edgeWeight = Arrays.copyOf(edgeWeight, edgeCount * 2);
+      }
+      edgeFrom[edgeCount] = fromIndex;
+      edgeTo[edgeCount] = toIndex;
+      edgeWeight[edgeCount] = length;
+      edgeCount++;
+      return this;
+    }
+
+    public RoadGraph build() {
+      int vertexCount = vertexIndices.size();
+      int[] firstArc = new int[vertexCount + 1];
+      for (int i = 0; i < edgeCount; i++) {
+        firstArc[edgeFrom[i] + 1]++;
+        firstArc[edgeTo[i] + 1]++;
+      }
+      for (int v = 0; v < vertexCount; v++) {
+        firstArc[v + 1] += firstArc[v];
+      }
+      int[] nextFree = Arrays.copyOf(firstArc, vertexCount);
+      int[] arcTarget = new int[edgeCount * 2];
+      double[] arcWeight = new double[edgeCount * 2];
+      for (int i = 0; i < edgeCount; i++) {
+        int forward = nextFree[edgeFrom[i]]++;
+        arcTarget[forward] = edgeTo[i];
+        arcWeight[forward] = edgeWeight[i];
+        int backward = nextFree[edgeTo[i]]++;
+        arcTarget[backward] = edgeFrom[i];
+        arcWeight[backward] = edgeWeight[i];
+      }
+      return new RoadGraph(Arrays.copyOf(vertexNames, vertexCount), new HashMap<>(vertexIndices), firstArc, arcTarget, arcWeight);
+    }
+  }
+}
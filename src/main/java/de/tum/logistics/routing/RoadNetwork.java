@@ -0,0 +1,319 @@
+package de.tum.logistics.routing;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+// Topology of a sumo net file read without a running simulation: junctions, normal edges, their lanes and the
+// lane-to-lane connections, all in primitive arrays. Lanes of edge e are firstLane[e]..firstLane[e+1]-1,
+// connections of lane l are firstConnection[l]..firstConnection[l+1]-1.
+public final class RoadNetwork {
+  private final String[] junctionIds;
+  private final Map<String, Integer> junctionIndices;
+  private final double[] junctionX;
+  private final double[] junctionY;
+
+  private final String[] edgeIds;
+  private final Map<String, Integer> edgeIndices;
+  private final int[] edgeFrom;
+  private final int[] edgeTo;
+  private final int[] firstLane;
+
+  private final double[] laneLength;
+  private final double[] laneSpeed;
+  private final int[] lanePermission;
+  private final int[] laneEdge;
+  private final String[][] permissions;
+
+  private final int[] firstConnection;
+  private final int[] connectionTarget;
+
+  private RoadNetwork(Loader loader) {
+    this.junctionIds = loader.junctionIds.toArray(new String[0]);
+    this.junctionIndices = loader.junctionIndices;
+    this.junctionX = Arrays.copyOf(loader.junctionX, junctionIds.length);
+    this.junctionY = Arrays.copyOf(loader.junctionY, junctionIds.length);
+    this.edgeIds = loader.edgeIds.toArray(new String[0]);
+    this.edgeIndices = loader.edgeIndices;
+    this.edgeFrom = new int[edgeIds.length];
+    this.edgeTo = new int[edgeIds.length];
+    for (int edge = 0; edge < edgeIds.length; edge++) {
+      edgeFrom[edge] = knownJunction(loader.edgeJunctions.get(2 * edge));
+      edgeTo[edge] = knownJunction(loader.edgeJunctions.get(2 * edge + 1));
+    }
+    this.firstLane = Arrays.copyOf(loader.firstLane, edgeIds.length + 1);
+    int laneCount = firstLane[edgeIds.length];
+    this.laneLength = Arrays.copyOf(loader.laneLength, laneCount);
+    this.laneSpeed = Arrays.copyOf(loader.laneSpeed, laneCount);
+    this.lanePermission = Arrays.copyOf(loader.lanePermission, laneCount);
+    this.laneEdge = Arrays.copyOf(loader.laneEdge, laneCount);
+    this.permissions = loader.permissions.toArray(new String[0][]);
+
+    // connections arrive grouped by junction, not by lane, so they are sorted into place by counting
+    this.firstConnection = new int[laneCount + 1];
+    for (int i = 0; i < loader.connectionCount; i++) {
+      firstConnection[loader.connectionFrom[i] + 1]++;
+    }
+    for (int lane = 0; lane < laneCount; lane++) {
+      firstConnection[lane + 1] += firstConnection[lane];
+    }
+    this.connectionTarget = new int[loader.connectionCount];
+    int[] nextFree = Arrays.copyOf(firstConnection, laneCount);
+    for (int i = 0; i < loader.connectionCount; i++) {
+      connectionTarget[nextFree[loader.connectionFrom[i]]++] = loader.connectionTo[i];
+    }
+  }
+
+  private int knownJunction(String junction) {
+    Integer index = junctionIndices.get(junction);
+    if (index == null) {
+      throw new IllegalStateException("Edge references unknown junction " + junction);
+    }
+    return index;
+  }
+
+  // the callers decide whether they can do without the network
+  public static RoadNetwork load(File netFile) {
+    try (InputStream in = new BufferedInputStream(new FileInputStream(netFile), 1 << 16)) {
+      InputStream xml = netFile.getName().endsWith(".gz") ? new GZIPInputStream(in, 1 << 16) : in;
+      XMLStreamReader reader = XMLInputFactory.newFactory().createXMLStreamReader(xml);
+      Loader loader = new Loader();
+      boolean normalEdge = false;
+      while (reader.hasNext()) {
+        if (reader.next() != XMLStreamConstants.START_ELEMENT) {
+          continue;
+        }
+        switch (reader.getLocalName()) {
+          case "edge" -> {
+            String function = reader.getAttributeValue(null, "function");
+            normalEdge = function == null || function.equals("normal");
+            if (normalEdge) {
+              loader.addEdge(reader.getAttributeValue(null, "id"),
+                  reader.getAttributeValue(null, "from"), reader.getAttributeValue(null, "to"));
+            }
+          }
+          case "lane" -> {
+            if (normalEdge) {
+              loader.addLane(Double.parseDouble(reader.getAttributeValue(null, "length")),
+                  Double.parseDouble(reader.getAttributeValue(null, "speed")),
+                  reader.getAttributeValue(null, "allow"),
+                  reader.getAttributeValue(null, "disallow"));
+            }
+          }
+          case "junction" -> {
+            if (!"internal".equals(reader.getAttributeValue(null, "type"))) {
+              loader.addJunction(reader.getAttributeValue(null, "id"),
+                  Double.parseDouble(reader.getAttributeValue(null, "x")),
+                  Double.parseDouble(reader.getAttributeValue(null, "y")));
+            }
+          }
+          case "connection" -> loader.addConnection(
+              reader.getAttributeValue(null, "from"), Integer.parseInt(reader.getAttributeValue(null, "fromLane")),
+              reader.getAttributeValue(null, "to"), Integer.parseInt(reader.getAttributeValue(null, "toLane")));
+          default -> {
+          }
+        }
+      }
+      reader.close();
+      return new RoadNetwork(loader);
+    } catch (IOException e) {
+      throw new UncheckedIOException("Could not read net file " + netFile.getAbsolutePath(), e);
+    } catch (XMLStreamException e) {
+      throw new IllegalStateException("Could not parse net file " + netFile.getAbsolutePath(), e);
+    }
+  }
+
+  public int junctionIndex(String junctionId) {
+    return junctionIndices.getOrDefault(junctionId, -1);
+  }
+
+  public int junctionCount() {
+    return junctionIds.length;
+  }
+
+  public String junctionId(int junction) {
+    return junctionIds[junction];
+  }
+
+  public double junctionX(int junction) {
+    return junctionX[junction];
+  }
+
+  public double junctionY(int junction) {
+    return junctionY[junction];
+  }
+
+  public int edgeCount() {
+    return edgeIds.length;
+  }
+
+  public int edgeIndex(String edgeId) {
+    return edgeIndices.getOrDefault(edgeId, -1);
+  }
+
+  public String edgeId(int edge) {
+    return edgeIds[edge];
+  }
+
+  public int fromJunction(int edge) {
+    return edgeFrom[edge];
+  }
+
+  public int toJunction(int edge) {
+    return edgeTo[edge];
+  }
+
+  public int laneCount(int edge) {
+    return firstLane[edge + 1] - firstLane[edge];
+  }
+
+  public int firstLane(int edge) {
+    return firstLane[edge];
+  }
+
+  public int laneEdge(int lane) {
+    return laneEdge[lane];
+  }
+
+  public double laneLength(int lane) {
+    return laneLength[lane];
+  }
+
+  public double laneSpeed(int lane) {
+    return laneSpeed[lane];
+  }
+
+  public boolean laneAllows(int lane, String vehicleClass) {
+    String[] permission = permissions[lanePermission[lane]];
+    return LaneIndex.permits(permission[0], permission[1], vehicleClass);
+  }
+
+  public boolean edgeAllows(int edge, String vehicleClass) {
+    for (int lane = firstLane[edge]; lane < firstLane[edge + 1]; lane++) {
+      if (laneAllows(lane, vehicleClass)) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  public List<String> edgesAllowing(String vehicleClass) {
+    List<String> edges = new ArrayList<>();
+    for (int edge = 0; edge < edgeIds.length; edge++) {
+      if (edgeAllows(edge, vehicleClass)) {
+        edges.add(edgeIds[edge]);
+      }
+    }
+    return edges;
+  }
+
+  public int firstConnection(int lane) {
+    return firstConnection[lane];
+  }
+
+  public int endConnection(int lane) {
+    return firstConnection[lane + 1];
+  }
+
+  public int connectionTarget(int connection) {
+    return connectionTarget[connection];
+  }
+
+  private static final class Loader {
+    private final List<String> junctionIds = new ArrayList<>();
+    private final Map<String, Integer> junctionIndices = new HashMap<>();
+    private double[] junctionX = new double[1024];
+    private double[] junctionY = new double[1024];
+
+    private final List<String> edgeIds = new ArrayList<>();
+    private final Map<String, Integer> edgeIndices = new HashMap<>();
+    private final List<String> edgeJunctions = new ArrayList<>();
+    private int[] firstLane = new int[1025];
+
+    private double[] laneLength = new double[1024];
+    private double[] laneSpeed = new double[1024];
+    private int[] lanePermission = new int[1024];
+    private int[] laneEdge = new int[1024];
+    private int laneCount = 0;
+    private final List<String[]> permissions = new ArrayList<>();
+    private final Map<String, Integer> permissionIds = new HashMap<>();
+
+    private int[] connectionFrom = new int[1024];
+    private int[] connectionTo = new int[1024];
+    private int connectionCount = 0;
+
+    void addJunction(String id, double x, double y) {
+      int junction = junctionIds.size();
+      if (junction == junctionX.length) {
+        junctionX = Arrays.copyOf(junctionX, junction * 2);
+        junctionY = Arrays.copyOf(junctionY, junction * 2);
+      }
+      junctionIds.add(id);
+      junctionIndices.put(id, junction);
+      junctionX[junction] = x;
+      junctionY[junction] = y;
+    }
+
+    void addEdge(String id, String from, String to) {
+      int edge = edgeIds.size();
+      if (edge + 1 == firstLane.length) {
+        firstLane = Arrays.copyOf(firstLane, firstLane.length * 2);
+      }
+      edgeIds.add(id);
+      edgeIndices.put(id, edge);
+      edgeJunctions.add(from);
+      edgeJunctions.add(to);
+      firstLane[edge] = laneCount;
+      firstLane[edge + 1] = laneCount;
+    }
+
+    void addLane(double length, double speed, String allow, String disallow) {
+      if (laneCount == laneLength.length) {
+        laneLength = Arrays.copyOf(laneLength, laneCount * 2);
+        laneSpeed = Arrays.copyOf(laneSpeed, laneCount * 2);
+        lanePermission = Arrays.copyOf(lanePermission, laneCount * 2);
+        laneEdge = Arrays.copyOf(laneEdge, laneCount * 2);
+      }
+      laneEdge[laneCount] = edgeIds.size() - 1;
+      laneLength[laneCount] = length;
+      laneSpeed[laneCount] = speed;
+      lanePermission[laneCount] = permissionIds.computeIfAbsent(allow + "|" + disallow, key -> {
+        permissions.add(new String[]{allow, disallow});
+        return permissions.size() - 1;
+      });
+      laneCount++;
+      firstLane[edgeIds.size()] = laneCount;
+    }
+
+    // connections follow all edges in a net file, those touching internal or unknown lanes are dropped
+    void addConnection(String fromEdge, int fromLane, String toEdge, int toLane) {
+      Integer from = edgeIndices.get(fromEdge);
+      Integer to = edgeIndices.get(toEdge);
+      if (from == null || to == null
+          || fromLane >= firstLane[from + 1] - firstLane[from] || toLane >= firstLane[to + 1] - firstLane[to]) {
+        return;
+      }
+      if (connectionCount == connectionFrom.length) {
+        connectionFrom = Arrays.copyOf(connectionFrom, connectionCount * 2);
+        connectionTo = Arrays.copyOf(connectionTo, connectionCount * 2);
+      }
+      connectionFrom[connectionCount] = firstLane[from] + fromLane;
+      connectionTo[connectionCount] = firstLane[to] + toLane;
+      connectionCount++;
+    }
+  }
+}
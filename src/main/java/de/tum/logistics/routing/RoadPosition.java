@@ -0,0 +1,4 @@
+package de.tum.logistics.routing;
+
+public record RoadPosition(String edgeId, double pos, int laneIndex) {
+}
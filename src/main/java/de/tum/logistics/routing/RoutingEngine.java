@@ -0,0 +1,16 @@
+package de.tum.logistics.routing;
+
+// Shortest path distances between vertex groups of a RoadGraph, a group is the set of junctions of one edge
+public interface RoutingEngine {
+
+  // distance between the closest pair of source and target vertices
+  double distance(int[] sources, int[] targets);
+
+  // prepares repeated queries against the same target vertices
+  ManyToMany manyToMany(int[] targets);
+
+  interface ManyToMany {
+    // distance from the closest source to every target, in the order the targets were given
+    double[] distancesFrom(int[] sources);
+  }
+}
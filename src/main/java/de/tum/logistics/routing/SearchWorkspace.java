@@ -0,0 +1,115 @@
+package de.tum.logistics.routing;
+
+import java.util.Arrays;
+
+// Per-thread search state, generation stamps avoid clearing the vertex arrays between searches
+final class SearchWorkspace {
+  private final double[] distance;
+  private final int[] reached;
+  private final int[] settled;
+  private final int[] marked;
+  private int generation = 0;
+  private double[] heapKeys = new double[256];
+  private int[] heapValues = new int[256];
+  private int heapSize = 0;
+
+  SearchWorkspace(int vertexCount) {
+    distance = new double[vertexCount];
+    reached = new int[vertexCount];
+    settled = new int[vertexCount];
+    marked = new int[vertexCount];
+  }
+
+  void reset() {
+    generation++;
+    heapSize = 0;
+  }
+
+  double distanceTo(int vertex) {
+    return reached[vertex] == generation ? distance[vertex] : Double.POSITIVE_INFINITY;
+  }
+
+  boolean isSettled(int vertex) {
+    return settled[vertex] == generation;
+  }
+
+  void settle(int vertex) {
+    settled[vertex] = generation;
+  }
+
+  // returns false if the vertex was already marked in this search
+  boolean mark(int vertex) {
+    if (marked[vertex] == generation) {
+      return false;
+    }
+    marked[vertex] = generation;
+    return true;
+  }
+
+  boolean isMarked(int vertex) {
+    return marked[vertex] == generation;
+  }
+
+  void relax(int vertex, double newDistance) {
+    if (newDistance >= distanceTo(vertex)) {
+      return;
+    }
+    distance[vertex] = newDistance;
+    reached[vertex] = generation;
+    push(newDistance, vertex);
+  }
+
+  boolean isEmpty() {
+    return heapSize == 0;
+  }
+
+  double peekKey() {
+    return heapKeys[0];
+  }
+
+  // lazy-deletion binary heap, stale entries are skipped by the caller via isSettled
+  private void push(double key, int value) {
+    if (heapSize == heapKeys.length) {
+      heapKeys = Arrays.copyOf(heapKeys, heapSize * 2);
+      heapValues = Arrays.copyOf(heapValues, heapSize * 2);
+    }
+    int i = heapSize++;
+    while (i > 0) {
+      int parent = (i - 1) >>> 1;
+      if (heapKeys[parent] <= key) {
+        break;
+      }
+      heapKeys[i] = heapKeys[parent];
+      heapValues[i] = heapValues[parent];
+      i = parent;
+    }
+    heapKeys[i] = key;
+    heapValues[i] = value;
+  }
+
+  int pop() {
+    int top = heapValues[0];
+    heapSize--;
+    double key = heapKeys[heapSize];
+    int value = heapValues[heapSize];
+    int i = 0;
+    while (true) {
+      int child = 2 * i + 1;
+      if (child >= heapSize) {
+        break;
+      }
+      if (child + 1 < heapSize && heapKeys[child + 1] < heapKeys[child]) {
+        child++;
+      }
+      if (key <= heapKeys[child]) {
+        break;
+      }
+      heapKeys[i] = heapKeys[child];
+      heapValues[i] = heapValues[child];
+      i = child;
+    }
+    heapKeys[i] = key;
+    heapValues[i] = value;
+    return top;
+  }
+}
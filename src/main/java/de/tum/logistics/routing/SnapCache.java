@@ -0,0 +1,96 @@
+package de.tum.logistics.routing;
+
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// Least recently used edge snaps per coordinate and vehicle class, bounded to maxSize entries. Misses and evicted
+// coordinates are snapped again by the EdgeSnapper, through the LaneIndex once it is loaded. Snaps run outside the
+// lock; two threads missing the same coordinate both snap it, which is cheaper than serializing every miss.
+public final class SnapCache {
+  private record SnapKey(long longitudeBits, long latitudeBits, String vehicleClass) {}
+
+  private final int maxSize;
+  private final Map<SnapKey, RoadPosition> entries;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  public SnapCache(int maxSize) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("Snap cache size must be positive");
+    }
+    this.maxSize = maxSize;
+    this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+      @Override
+      protected boolean removeEldestEntry(Map.Entry<SnapKey, RoadPosition> eldest) {
+        if (size() > SnapCache.this.maxSize) {
+          evictions.increment();
+          return true;
+        }
+        return false;
+      }
+    };
+  }
+
+  public RoadPosition snap(double longitude, double latitude, String vehicleClass) {
+    SnapKey key = new SnapKey(Double.doubleToLongBits(longitude), Double.doubleToLongBits(latitude), vehicleClass);
+    RoadPosition position;
+    synchronized (entries) {
+      position = entries.get(key);
+    }
+    if (position != null) {
+      hits.increment();
+      return position;
+    }
+    misses.increment();
+    position = EdgeSnapper.snap(longitude, latitude, vehicleClass);
+    synchronized (entries) {
+      entries.put(key, position);
+    }
+    return position;
+  }
+
+  // the snap if it is cached, without snapping on a miss
+  public RoadPosition cached(double longitude, double latitude, String vehicleClass) {
+    SnapKey key = new SnapKey(Double.doubleToLongBits(longitude), Double.doubleToLongBits(latitude), vehicleClass);
+    synchronized (entries) {
+      return entries.get(key);
+    }
+  }
+
+  // seeds snaps that are known without snapping, e.g. from an address snapshot
+  public void put(double longitude, double latitude, String vehicleClass, RoadPosition position) {
+    SnapKey key = new SnapKey(Double.doubleToLongBits(longitude), Double.doubleToLongBits(latitude), vehicleClass);
+    synchronized (entries) {
+      entries.put(key, position);
+    }
+  }
+
+  public int size() {
+    synchronized (entries) {
+      return entries.size();
+    }
+  }
+
+  public long hits() {
+    return hits.sum();
+  }
+
+  public long misses() {
+    return misses.sum();
+  }
+
+  public long evictions() {
+    return evictions.sum();
+  }
+
+  @Override
+  public String toString() {
+    long hitCount = hits.sum();
+    long lookups = hitCount + misses.sum();
+    return String.format(Locale.ROOT, "%d of %d snaps cached, %d hits, %d misses (%.1f%% hit rate), %d evictions",
+        size(), maxSize, hitCount, misses.sum(), lookups == 0 ? 0 : 100.0 * hitCount / lookups, evictions.sum());
+  }
+}
@@ -0,0 +1,99 @@
+package de.tum.logistics.routing;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.util.Random;
+
+import org.junit.jupiter.api.Test;
+
+class ContractionHierarchyTest {
+  private static final int GRAPHS = 20;
+  private static final int PAIRS_PER_GRAPH = 200;
+  private static final double EPSILON = 1e-9;
+
+  // sparse random graphs fall apart into several components, so some of the random pairs are unreachable
+  private static RoadGraph randomGraph(Random random, int vertexCount, int edgeCount) {
+    RoadGraph.Builder builder = new RoadGraph.Builder();
+    for (int v = 0; v < vertexCount; v++) {
+      builder.addVertex("v" + v);
+    }
+    for (int e = 0; e < edgeCount; e++) {
+      builder.addEdge("v" + random.nextInt(vertexCount), "v" + random.nextInt(vertexCount), 1 + random.nextInt(100));
+    }
+    return builder.build();
+  }
+
+  private static int[] randomVertices(Random random, RoadGraph graph, int count) {
+    int[] vertices = new int[count];
+    for (int i = 0; i < count; i++) {
+      vertices[i] = random.nextInt(graph.vertexCount());
+    }
+    return vertices;
+  }
+
+  @Test
+  void distanceMatchesDijkstra() {
+    Random random = new Random(1);
+    int unreachable = 0;
+    for (int g = 0; g < GRAPHS; g++) {
+      RoadGraph graph = randomGraph(random, 100 + random.nextInt(200), 150 + random.nextInt(300));
+      Dijkstra dijkstra = new Dijkstra(graph);
+      ContractionHierarchy hierarchy = ContractionHierarchy.build(graph);
+      for (int p = 0; p < PAIRS_PER_GRAPH; p++) {
+        // one or two junctions per side, like the two ends of an edge
+        int[] sources = randomVertices(random, graph, 1 + random.nextInt(2));
+        int[] targets = randomVertices(random, graph, 1 + random.nextInt(2));
+        double expected = dijkstra.distance(sources, targets);
+        assertEquals(expected, hierarchy.distance(sources, targets), EPSILON, "graph " + g + ", pair " + p);
+        if (expected == Double.POSITIVE_INFINITY) {
+          unreachable++;
+        }
+      }
+    }
+    assertTrue(unreachable > 0, "no unreachable pair was sampled");
+  }
+
+  @Test
+  void manyToManyMatchesDijkstra() {
+    Random random = new Random(2);
+    int unreachable = 0;
+    for (int g = 0; g < GRAPHS; g++) {
+      RoadGraph graph = randomGraph(random, 100 + random.nextInt(200), 150 + random.nextInt(300));
+      Dijkstra dijkstra = new Dijkstra(graph);
+      ContractionHierarchy hierarchy = ContractionHierarchy.build(graph);
+      int[] targets = randomVertices(random, graph, 30);
+      RoutingEngine.ManyToMany expectedMatrix = dijkstra.manyToMany(targets);
+      RoutingEngine.ManyToMany matrix = hierarchy.manyToMany(targets);
+      for (int s = 0; s < PAIRS_PER_GRAPH / targets.length; s++) {
+        int[] sources = randomVertices(random, graph, 1 + random.nextInt(2));
+        double[] expected = expectedMatrix.distancesFrom(sources);
+        assertArrayEquals(expected, matrix.distancesFrom(sources), EPSILON, "graph " + g + ", sources " + s);
+        for (double distance : expected) {
+          if (distance == Double.POSITIVE_INFINITY) {
+            unreachable++;
+          }
+        }
+      }
+    }
+    assertTrue(unreachable > 0, "no unreachable pair was sampled");
+  }
+
+  @Test
+  void separateComponentsAreUnreachable() {
+    RoadGraph graph = new RoadGraph.Builder()
+        .addEdge("a", "b", 5)
+        .addEdge("b", "c", 7)
+        .addEdge("x", "y", 3)
+        .build();
+    ContractionHierarchy hierarchy = ContractionHierarchy.build(graph);
+    int a = graph.indexOf("a");
+    int c = graph.indexOf("c");
+    int y = graph.indexOf("y");
+    assertEquals(12, hierarchy.distance(new int[]{a}, new int[]{c}), EPSILON);
+    assertEquals(Double.POSITIVE_INFINITY, hierarchy.distance(new int[]{a}, new int[]{y}));
+    assertArrayEquals(new double[]{12, Double.POSITIVE_INFINITY, 0},
+        hierarchy.manyToMany(new int[]{c, y, a}).distancesFrom(new int[]{a}), EPSILON);
+  }
+}